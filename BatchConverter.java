@@ -0,0 +1,217 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts many XML files concurrently on a fixed pool of worker threads. Every job is an
+ * ordinary XmlParser run: the factory creates and configures the parser, processFile does the
+ * work and its ProgressListener messages are passed on per file. cancel() cancels the parsers
+ * that are running and skips the jobs that have not started.
+ *
+ * Files are started largest first, so one big file picked up last does not keep the batch
+ * running long after the others are done. Jobs are independent: a file that fails is reported
+ * and the batch goes on.
+ */
+final class BatchConverter {
+
+    enum Status { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+
+    /**
+     * Receives per-file and aggregate progress; called from the worker threads.
+     */
+    interface Listener {
+        /**
+         * @param index position of the file in the input list
+         * @param message the parser's progress message, the error for FAILED, or null
+         */
+        void onFileStatus(int index, Status status, String message);
+
+        /**
+         * @param bytesDone input bytes of the files completed so far
+         * @param mbPerSecond bytesDone over the time since the batch started
+         */
+        void onProgress(int filesDone, int fileCount, long bytesDone, long totalBytes, double mbPerSecond);
+
+        /**
+         * Called once per file when its job has ended, before onProgress.
+         */
+        default void onResult(int index, Result result) { }
+    }
+
+    /**
+     * Creates the configured parser for one input file.
+     */
+    interface ParserFactory {
+        XmlParser create(Path input) throws Exception;
+    }
+
+    /**
+     * Outcome of one file.
+     */
+    static final class Result {
+        final Path input;
+        final Status status;
+        final List<Path> outputs;
+        final Throwable error;
+        final long inputBytes;
+        final long nanos; // time the conversion took, 0 if it never started
+
+        Result(Path input, Status status, List<Path> outputs, Throwable error, long inputBytes, long nanos) {
+            this.input = input;
+            this.status = status;
+            this.outputs = outputs;
+            this.error = error;
+            this.inputBytes = inputBytes;
+            this.nanos = nanos;
+        }
+
+        double mbPerSecond() {
+            return nanos > 0 ? inputBytes / (1024.0 * 1024.0) / (nanos / 1e9) : 0;
+        }
+    }
+
+    private final List<Path> inputs;
+    private final ParserFactory factory;
+    private final int threads;
+    private final Listener listener;
+    private final List<XmlParser> running = new ArrayList<>();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private volatile boolean canceled;
+    private long totalBytes;
+    private long startNanos;
+
+    /**
+     * @param threads files converted at the same time, see defaultThreads
+     */
+    BatchConverter(List<Path> inputs, ParserFactory factory, int threads, Listener listener) {
+        this.inputs = new ArrayList<>(inputs);
+        this.factory = factory;
+        this.threads = Math.max(1, Math.min(threads, this.inputs.size()));
+        this.listener = listener;
+    }
+
+    /**
+     * Half the cores, between 1 and 4: each conversion holds its own output buffers and may
+     * parse on the common pool itself, so more concurrent files mostly add memory pressure.
+     */
+    static int defaultThreads() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Converts all files and waits for them.
+     *
+     * @return one result per input, in input order
+     */
+    List<Result> run() throws InterruptedException {
+        long[] sizes = new long[inputs.size()];
+        List<Integer> order = new ArrayList<>(inputs.size());
+        for (int i = 0; i < sizes.length; i++) {
+            try {
+                sizes[i] = Files.size(inputs.get(i));
+            } catch (Exception e) {
+                sizes[i] = 0; // reported when the job fails
+            }
+            totalBytes += sizes[i];
+            order.add(i);
+            listener.onFileStatus(i, Status.QUEUED, null);
+        }
+        order.sort((a, b) -> Long.compare(sizes[b], sizes[a]));
+
+        startNanos = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "batch-convert");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<Result>> futures = new ArrayList<>(Collections.<Future<Result>>nCopies(inputs.size(), null));
+        try {
+            for (int i : order) {
+                futures.set(i, pool.submit(() -> convert(i, sizes[i])));
+            }
+            List<Result> results = new ArrayList<>(inputs.size());
+            for (Future<Result> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause()); // convert() reports its own errors
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Cancels the running conversions and skips the remaining ones.
+     */
+    void cancel() {
+        canceled = true;
+        synchronized (running) {
+            for (XmlParser p : running) p.cancel();
+        }
+    }
+
+    boolean isCanceled() {
+        return canceled;
+    }
+
+    private Result convert(int index, long size) {
+        Path input = inputs.get(index);
+        if (canceled) {
+            listener.onFileStatus(index, Status.CANCELLED, null);
+            Result skipped = new Result(input, Status.CANCELLED, Collections.<Path>emptyList(), null, size, 0);
+            listener.onResult(index, skipped);
+            return skipped;
+        }
+        XmlParser parser = null;
+        Result result;
+        long start = System.nanoTime();
+        try {
+            parser = factory.create(input);
+            parser.setProgressListener(message -> listener.onFileStatus(index, Status.RUNNING, message));
+            synchronized (running) {
+                running.add(parser);
+            }
+            if (canceled) parser.cancel(); // cancel() may have run before the parser was registered
+            listener.onFileStatus(index, Status.RUNNING, null);
+            parser.processFile();
+            result = new Result(input, Status.DONE, parser.getOutputPaths(), null, size, System.nanoTime() - start);
+            listener.onFileStatus(index, Status.DONE, null);
+        } catch (InterruptedException e) {
+            result = new Result(input, Status.CANCELLED, Collections.<Path>emptyList(), e, size, System.nanoTime() - start);
+            listener.onFileStatus(index, Status.CANCELLED, null);
+        } catch (Throwable t) {
+            // A cancelled parser may surface as some other exception from deep in the writer
+            Status status = parser != null && parser.isCanceled() ? Status.CANCELLED : Status.FAILED;
+            result = new Result(input, status, Collections.<Path>emptyList(), t, size, System.nanoTime() - start);
+            listener.onFileStatus(index, status, status == Status.FAILED ? String.valueOf(t.getMessage()) : null);
+        } finally {
+            if (parser != null) {
+                synchronized (running) {
+                    running.remove(parser);
+                }
+            }
+        }
+
+        listener.onResult(index, result);
+        long bytes = bytesDone.addAndGet(size);
+        int done = filesDone.incrementAndGet();
+        double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        listener.onProgress(done, inputs.size(), bytes, totalBytes, bytes / (1024.0 * 1024.0) / seconds);
+        return result;
+    }
+}
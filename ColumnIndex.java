@@ -0,0 +1,39 @@
+import java.util.*;
+
+/**
+ * Column dictionary: assigns every field name a fixed int id (its header position) so rows
+ * can be stored as plain arrays and written by index instead of by name lookups.
+ */
+final class ColumnIndex {
+
+    private final String[] names;
+    private final Map<String, Integer> ids;
+
+    ColumnIndex(Collection<String> fieldNames) {
+        this.names = fieldNames.toArray(new String[0]);
+        this.ids = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String name(int column) {
+        return names[column];
+    }
+
+    /**
+     * @return the column id of the given field, or -1 if the field is not a known header
+     */
+    int indexOf(String fieldName) {
+        Integer id = ids.get(fieldName);
+        return id != null ? id : -1;
+    }
+
+    List<String> names() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+
+/**
+ * Value type of each column, inferred from the first values written to it. Exports keep one
+ * kind of value per column, so once a column is known to hold dates, numbers or text the
+ * writer checks that interpretation first instead of sniffing every cell from scratch.
+ *
+ * The type is only a hint: a value that does not fit still gets the full date/number/text
+ * check, so cell contents never depend on the inference.
+ */
+final class ColumnTypes {
+
+    enum Type { UNKNOWN, DATE, NUMBER, TEXT }
+
+    // Non-empty values looked at before a column's type is fixed
+    private static final int SAMPLE_SIZE = 50;
+
+    private static final Type[] VALUES = Type.values();
+
+    private final Type[] types;
+    private final int[] sampled;
+    private final int[][] counts;
+
+    ColumnTypes(int columnCount) {
+        this.types = new Type[columnCount];
+        this.sampled = new int[columnCount];
+        this.counts = new int[columnCount][VALUES.length];
+        Arrays.fill(types, Type.UNKNOWN);
+    }
+
+    /**
+     * @return the inferred type, or UNKNOWN while the column is still being sampled
+     */
+    Type get(int column) {
+        return types[column];
+    }
+
+    /**
+     * Records the type a non-empty value of the column turned out to have. Once SAMPLE_SIZE
+     * values have been seen the most frequent type becomes the column's type.
+     */
+    void record(int column, Type type) {
+        if (types[column] != Type.UNKNOWN) return;
+        int[] c = counts[column];
+        c[type.ordinal()]++;
+        if (++sampled[column] < SAMPLE_SIZE) return;
+        Type best = Type.TEXT;
+        for (Type t : VALUES) {
+            if (c[t.ordinal()] > c[best.ordinal()]) best = t;
+        }
+        types[column] = best;
+    }
+
+    /**
+     * Decides how a value is written: a date if it is dd.MM.yyyy, otherwise a number if it
+     * parses as one, otherwise text. The column's expected type only picks the check that
+     * runs first; when the value does not fit, the full date/number/text order applies.
+     * For DATE and NUMBER the parsed value is left in dates/numbers.
+     */
+    static Type classify(String value, Type expected, FastDateParser dates, FastNumberParser numbers) {
+        switch (expected) {
+            case DATE:
+                if (dates.parse(value)) return Type.DATE;
+                break;
+            case NUMBER:
+                // Dates also parse as numbers ("01.02.2024" reads as 1022024), so only the
+                // shape check may be skipped, never the date interpretation itself
+                if (!FastDateParser.hasDateShape(value)) {
+                    return numbers.parse(value) ? Type.NUMBER : Type.TEXT;
+                }
+                break;
+            case TEXT:
+                // Neither a date nor a number can start with a letter other than the
+                // Infinity/NaN spellings, so most text cells are settled by one character
+                if (!value.isEmpty()) {
+                    char c = value.charAt(0);
+                    if (((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) && c != 'I' && c != 'N') {
+                        return Type.TEXT;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        if (dates.parse(value)) return Type.DATE;
+        if (numbers.parse(value)) return Type.NUMBER;
+        return Type.TEXT;
+    }
+}
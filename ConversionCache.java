@@ -0,0 +1,420 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local cache of conversion outputs, so converting an input that was converted before with
+ * the same options costs a lookup instead of a parse (see XmlParser.setUseCache).
+ *
+ * Entries are keyed by the input's content digest and size plus a description of every
+ * option that changes the output, including the input and output file names. The digest is
+ * remembered per input path, size and modification time, so an untouched input is not read
+ * again. Each entry is a directory of hard links to the files the conversion wrote (copies
+ * where the file system cannot link); on a hit they are linked back next to the requested
+ * output. Cached files whose size or modification time changed, for example because an
+ * output was edited in place, are dropped instead of restored.
+ *
+ * An index file holds every entry in least-recently-used order and is rewritten atomically
+ * when entries are added or removed. Several processes may share the cache directory: every
+ * lookup or change takes an exclusive lock on a lock file and re-reads the index under it
+ * when its size, modification time or file identity changed, so no process overwrites
+ * entries another one added. A hit only moves the entry in memory; the new order is written
+ * with the next change, or by close() at exit for the shared cache. Past the disk budget the least recently used entries are
+ * evicted. Entry directories the index does not list (left by a store that was interrupted)
+ * are removed under the lock once they are older than ORPHAN_GRACE_MILLIS.
+ */
+final class ConversionCache {
+
+    /** System property naming the cache directory; defaults to ~/.xml-parser/cache. */
+    static final String DIR_PROPERTY = "xmlparser.cache.dir";
+
+    /** System property with the cache's disk budget in megabytes. */
+    static final String BUDGET_PROPERTY = "xmlparser.cache.maxMB";
+
+    static final long DEFAULT_BUDGET_MB = 2048;
+
+    private static final String INDEX_FILE = "index.txt";
+    private static final String LOCK_FILE = "index.lock";
+    private static final long ORPHAN_GRACE_MILLIS = 60 * 60 * 1000L;
+    private static final int MAX_DIGESTS = 10_000;
+    private static final int DIGEST_BUFFER_BYTES = 1024 * 1024;
+
+    private static ConversionCache shared;
+
+    /** Work on the index done while holding the cache lock. */
+    private interface Locked<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * One cached conversion: its key and the files in its directory, with the size and
+     * modification time they had when they were stored.
+     */
+    private static final class Entry {
+        final String id;
+        final String key;
+        final List<String> names = new ArrayList<>();
+        final List<long[]> stamps = new ArrayList<>(); // {size, modified millis}
+        long bytes;
+
+        Entry(String id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+
+        void add(String name, long size, long modified) {
+            names.add(name);
+            stamps.add(new long[] { size, modified });
+            bytes += size;
+        }
+    }
+
+    private final Path directory;
+    private final long budgetBytes;
+    // Entries by id, least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Content digests by "path|size|modified"
+    private final LinkedHashMap<String, String> digests = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_DIGESTS;
+        }
+    };
+    // Entry ids hit since the index was last written, applied again when it is re-read
+    private final Set<String> touched = new LinkedHashSet<>();
+    // Size, modification time and file key of the index as last read or written
+    private List<Object> indexStamp;
+    private long totalBytes;
+
+    ConversionCache(Path directory, long budgetBytes) throws IOException {
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+        Files.createDirectories(directory);
+        withLock(() -> {
+            sweepOrphans();
+            return null;
+        });
+    }
+
+    /**
+     * @return the cache in the directory named by DIR_PROPERTY, with the budget from
+     *         BUDGET_PROPERTY; opened on first use and shared by all conversions
+     */
+    static synchronized ConversionCache shared() throws IOException {
+        if (shared == null) {
+            String configured = System.getProperty(DIR_PROPERTY);
+            Path dir = configured != null && !configured.trim().isEmpty()
+                    ? Paths.get(configured.trim())
+                    : Paths.get(System.getProperty("user.home"), ".xml-parser", "cache");
+            long budgetMb = Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET_MB);
+            ConversionCache cache = new ConversionCache(dir, budgetMb * 1024 * 1024);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cache.close();
+                } catch (IOException ignore) {
+                    // Only the recency of the last hits is lost
+                }
+            }, "conversion-cache"));
+            shared = cache;
+        }
+        return shared;
+    }
+
+    /**
+     * Builds the cache key of a conversion. Reads the whole input unless its digest is known
+     * for the same path, size and modification time.
+     *
+     * @param options description of every setting that changes the output
+     */
+    String key(Path input, String options) throws IOException {
+        long size = Files.size(input);
+        String stamp = input.toAbsolutePath().normalize() + "|" + size + "|" + Files.getLastModifiedTime(input).toMillis();
+        String digest;
+        synchronized (this) {
+            digest = digests.get(stamp);
+        }
+        if (digest == null) {
+            digest = digest(input);
+            synchronized (this) {
+                digests.put(stamp, digest);
+            }
+        }
+        return digest + "|" + size + "|" + options;
+    }
+
+    /**
+     * Links the cached files of key next to output, replacing files of the same name.
+     *
+     * @return the restored files in the order they were stored, or null on a miss
+     */
+    synchronized List<Path> restore(String key, Path output) throws IOException {
+        return withLock(() -> restoreLocked(key, output));
+    }
+
+    private List<Path> restoreLocked(String key, Path output) throws IOException {
+        String id = id(key);
+        Entry e = entries.get(id);
+        if (e == null || !e.key.equals(key)) return null;
+
+        Path dir = directory.resolve(id);
+        for (int i = 0; i < e.names.size(); i++) {
+            Path cached = dir.resolve(e.names.get(i));
+            long[] stamp = e.stamps.get(i);
+            if (!Files.isRegularFile(cached) || Files.size(cached) != stamp[0]
+                    || Files.getLastModifiedTime(cached).toMillis() != stamp[1]) {
+                remove(e);
+                saveIndex();
+                return null;
+            }
+        }
+
+        List<Path> restored = new ArrayList<>(e.names.size());
+        for (String name : e.names) {
+            Path cached = dir.resolve(name);
+            Path target = output.resolveSibling(name);
+            if (!Files.exists(target) || !Files.isSameFile(cached, target)) linkOrCopy(cached, target);
+            restored.add(target);
+        }
+        touched.add(id); // the entry moved to the most recently used end
+        return restored;
+    }
+
+    /**
+     * Writes back the recency of the entries hit since the index was last written.
+     */
+    synchronized void close() throws IOException {
+        if (touched.isEmpty()) return;
+        withLock(() -> {
+            saveIndex();
+            return null;
+        });
+    }
+
+    /**
+     * Adds the files a conversion wrote under key and evicts the least recently used entries
+     * beyond the budget. Files must be in one directory.
+     */
+    synchronized void store(String key, List<Path> files) throws IOException {
+        if (key.indexOf('\t') >= 0 || key.indexOf('\n') >= 0 || key.indexOf('\r') >= 0) return;
+        withLock(() -> {
+            storeLocked(key, files);
+            return null;
+        });
+    }
+
+    private void storeLocked(String key, List<Path> files) throws IOException {
+        String id = id(key);
+        Entry old = entries.get(id);
+        if (old != null) remove(old);
+
+        Entry e = new Entry(id, key);
+        for (Path f : files) e.add(f.getFileName().toString(), Files.size(f), 0);
+        if (e.bytes > budgetBytes) {
+            saveIndex();
+            return;
+        }
+
+        Path dir = directory.resolve(id);
+        Files.createDirectories(dir);
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                Path cached = dir.resolve(e.names.get(i));
+                linkOrCopy(files.get(i), cached);
+                e.stamps.get(i)[1] = Files.getLastModifiedTime(cached).toMillis();
+            }
+        } catch (IOException ex) {
+            deleteEntryFiles(dir, e);
+            throw ex;
+        }
+        entries.put(id, e);
+        totalBytes += e.bytes;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalBytes > budgetBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.bytes;
+            deleteEntryFiles(directory.resolve(eldest.id), eldest);
+        }
+        saveIndex();
+    }
+
+    private void remove(Entry e) {
+        entries.remove(e.id);
+        totalBytes -= e.bytes;
+        deleteEntryFiles(directory.resolve(e.id), e);
+    }
+
+    private static void deleteEntryFiles(Path dir, Entry e) {
+        for (String name : e.names) {
+            try { Files.deleteIfExists(dir.resolve(name)); } catch (IOException ignore) {}
+        }
+        try { Files.deleteIfExists(dir); } catch (IOException ignore) {}
+    }
+
+    // Hard link where the file system allows it, else a copy that keeps the modification time
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    /**
+     * Runs work holding an exclusive lock on LOCK_FILE, with the index read again if another
+     * process changed it since. The caller holds this object's monitor, since file locks are
+     * per process, not per thread.
+     */
+    private <T> T withLock(Locked<T> work) throws IOException {
+        try (FileChannel lock = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            lock.lock();
+            List<Object> stamp = indexStamp();
+            if (!stamp.equals(indexStamp)) {
+                loadIndex();
+                indexStamp = stamp;
+            }
+            return work.run();
+        }
+    }
+
+    // Changes whenever the index is replaced: saveIndex renames a new file over it
+    private List<Object> indexStamp() throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        if (!Files.isRegularFile(index)) return Collections.emptyList();
+        BasicFileAttributes a = Files.readAttributes(index, BasicFileAttributes.class);
+        return Arrays.asList(a.size(), a.lastModifiedTime().toMillis(), a.fileKey());
+    }
+
+    /**
+     * Index lines, tab-separated, entries least recently used first:
+     * entry id key / file id size modified name / digest digest stamp.
+     * Replaces the entries held in memory, keeping this process's hits most recently used;
+     * digests read are added to the known ones.
+     */
+    private void loadIndex() throws IOException {
+        entries.clear();
+        totalBytes = 0;
+        Path index = directory.resolve(INDEX_FILE);
+        if (Files.isRegularFile(index)) {
+            try (BufferedReader in = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+                String line;
+                Entry e = null;
+                while ((line = in.readLine()) != null) {
+                    String[] f = line.split("\t", -1);
+                    try {
+                        if (f[0].equals("entry") && f.length == 3) {
+                            e = new Entry(f[1], f[2]);
+                            entries.put(e.id, e);
+                        } else if (f[0].equals("file") && f.length == 5 && e != null && e.id.equals(f[1])) {
+                            e.add(f[4], Long.parseLong(f[2]), Long.parseLong(f[3]));
+                        } else if (f[0].equals("digest") && f.length == 3) {
+                            digests.putIfAbsent(f[2], f[1]);
+                        }
+                    } catch (NumberFormatException damaged) {
+                        if (e != null) entries.remove(e.id);
+                        e = null;
+                    }
+                }
+            }
+        }
+        touched.retainAll(entries.keySet());
+        for (String id : touched) entries.get(id);
+        for (Entry e : entries.values()) totalBytes += e.bytes;
+    }
+
+    // Entry directories the index does not know about, past the grace period so a store
+    // another process is running is never touched; called holding the lock
+    private void sweepOrphans() throws IOException {
+        long cutoff = System.currentTimeMillis() - ORPHAN_GRACE_MILLIS;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(directory)) {
+            for (Path dir : dirs) {
+                String name = dir.getFileName().toString();
+                if (Files.isDirectory(dir) && name.matches("[0-9a-f]{32}") && !entries.containsKey(name)
+                        && Files.getLastModifiedTime(dir).toMillis() < cutoff) {
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                        for (Path f : files) Files.deleteIfExists(f);
+                    }
+                    Files.deleteIfExists(dir);
+                }
+            }
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        Path tmp = directory.resolve(INDEX_FILE + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Entry e : entries.values()) {
+                out.write("entry\t" + e.id + "\t" + e.key + "\n");
+                for (int i = 0; i < e.names.size(); i++) {
+                    long[] stamp = e.stamps.get(i);
+                    out.write("file\t" + e.id + "\t" + stamp[0] + "\t" + stamp[1] + "\t" + e.names.get(i) + "\n");
+                }
+            }
+            for (Map.Entry<String, String> d : digests.entrySet()) {
+                out.write("digest\t" + d.getValue() + "\t" + d.getKey() + "\n");
+            }
+        }
+        Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexStamp = indexStamp();
+        touched.clear();
+    }
+
+    // MD5 of the file content: only used to tell inputs apart, not as a security measure
+    private static String digest(Path input) throws IOException {
+        MessageDigest md = md5();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DIGEST_BUFFER_BYTES);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        }
+        return hex(md.digest());
+    }
+
+    private static String id(String key) {
+        return hex(md5().digest(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every Java platform provides MD5
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Resume point of a conversion, kept next to the output as report_out.csv.checkpoint while a
+ * resumable conversion runs (see XmlParser.setResumable), and after an incremental one has
+ * completed (see XmlParser.setIncremental). It records where in the input the last fully
+ * written GL_VOUCHER ends and how much output belongs to the vouchers before it: the row
+ * counts, the CSV/JSONL and reject-log byte lengths, or the number of workbooks that are
+ * complete.
+ *
+ * The file is a small properties file replaced atomically on every save, so a crash leaves
+ * either the previous or the new resume point. It only applies to the input it was written
+ * for: the identity string (the input, its size and modification time unless it may grow, and
+ * every option that changes the output) must match, otherwise load() ignores it. Digests of
+ * the input up to the resume point, one per block, tell whether that part is still the same
+ * (see PrefixDigest).
+ */
+final class ConversionCheckpoint {
+
+    private static final int DIGEST_BUFFER_BYTES = 1024 * 1024;
+    // Input bytes per stored digest; a resume reads at most two blocks to check the prefix
+    static final long DIGEST_BLOCK_BYTES = 16L * 1024 * 1024;
+
+    private final Path path;
+    private final String identity;
+    private boolean saved;
+
+    // Column headers of the conversion; a resumed run skips the header pass
+    List<String> headers = new ArrayList<>();
+    // Elements enclosing every voucher, outermost first (see VoucherSplitter.voucherParents)
+    List<String> voucherParents;
+
+    // Input byte offset behind the last voucher covered, and the vouchers before it
+    long inputOffset;
+    // MD5 of every whole DIGEST_BLOCK_BYTES block before inputOffset, then of the rest of it
+    List<String> inputBlocks = new ArrayList<>();
+    String inputFingerprint = "";
+    long vouchers;
+    // Rows of the voucher at inputOffset already written to earlier parts (split xlsx only)
+    int skipRows;
+
+    long dataRows;
+    long rejectedRows;
+
+    // CSV/JSONL: output and reject-log file lengths holding the rows above
+    long outputBytes;
+    long rejectBytes;
+    long rejectsLogged;
+    long rejectsDropped;
+    Map<String, Long> reasonCounts = new LinkedHashMap<>();
+
+    // xlsx: the first completedParts workbooks are written
+    int completedParts;
+
+    ConversionCheckpoint(Path path, String identity) {
+        this.path = path;
+        this.identity = identity;
+    }
+
+    /**
+     * Checkpoint path for an output file: report_out.csv -&gt; report_out.csv.checkpoint.
+     */
+    static Path pathFor(Path output) {
+        return output.resolveSibling(output.getFileName() + ".checkpoint");
+    }
+
+    /**
+     * @param options description of every setting that changes the output
+     * @param growing true if the input may have grown since the checkpoint was saved; its size
+     *                and modification time are then left out
+     */
+    static String identity(Path input, String options, boolean growing) throws IOException {
+        String file = input.toAbsolutePath().normalize().toString();
+        return growing
+                ? file + "|growing|" + options
+                : file + "|" + Files.size(input) + "|" + Files.getLastModifiedTime(input).toMillis() + "|" + options;
+    }
+
+    /**
+     * Block digests of the input, carried forward as a conversion moves on, so each byte is
+     * read only once per conversion. Checking a checkpoint reads the first and the last whole
+     * block and the bytes after it and takes the other block digests on trust: an input that
+     * grows is usually only appended to, and an edit near its start or its resume point is
+     * still caught. Not thread-safe.
+     */
+    static final class PrefixDigest {
+        private final Path input;
+        private final ByteBuffer buffer = ByteBuffer.allocate(DIGEST_BUFFER_BYTES);
+        private final List<String> blocks = new ArrayList<>();
+        private MessageDigest md = md5();
+        private long position;
+
+        PrefixDigest(Path input) {
+            this.input = input;
+        }
+
+        /**
+         * Sets the block digests and the fingerprint of checkpoint for its inputOffset,
+         * reading only the input bytes that were not digested yet.
+         */
+        void fill(ConversionCheckpoint checkpoint) throws IOException {
+            try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                advance(channel, checkpoint.inputOffset);
+            }
+            checkpoint.inputBlocks = new ArrayList<>(blocks);
+            checkpoint.inputFingerprint = current();
+        }
+
+        /**
+         * @return true if the sampled blocks and the bytes after the last whole block still
+         *         match checkpoint; the digests then continue from its inputOffset
+         */
+        boolean matches(ConversionCheckpoint checkpoint) throws IOException {
+            long offset = checkpoint.inputOffset;
+            int whole = (int) (offset / DIGEST_BLOCK_BYTES);
+            try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                if (channel.size() < offset || checkpoint.inputBlocks.size() != whole) return false;
+                if (whole > 0 && !blockMatches(channel, 0, checkpoint)) return false;
+                if (whole > 1 && !blockMatches(channel, whole - 1, checkpoint)) return false;
+                blocks.clear();
+                blocks.addAll(checkpoint.inputBlocks);
+                md = md5();
+                position = whole * DIGEST_BLOCK_BYTES;
+                advance(channel, offset);
+            }
+            if (current().equals(checkpoint.inputFingerprint)) return true;
+            blocks.clear();
+            md = md5();
+            position = 0;
+            return false;
+        }
+
+        private boolean blockMatches(FileChannel channel, int k, ConversionCheckpoint checkpoint) throws IOException {
+            MessageDigest block = md5();
+            read(channel, block, k * DIGEST_BLOCK_BYTES, (k + 1) * DIGEST_BLOCK_BYTES);
+            return hex(block.digest()).equals(checkpoint.inputBlocks.get(k));
+        }
+
+        private void advance(FileChannel channel, long offset) throws IOException {
+            if (offset < position) {
+                // Back to the last block boundary at or before offset
+                while (blocks.size() * DIGEST_BLOCK_BYTES > offset) blocks.remove(blocks.size() - 1);
+                md = md5();
+                position = blocks.size() * DIGEST_BLOCK_BYTES;
+            }
+            if (channel.size() < offset) throw new EOFException(input.getFileName() + " is shorter than " + offset);
+            while (position < offset) {
+                long blockEnd = (blocks.size() + 1) * DIGEST_BLOCK_BYTES;
+                long end = Math.min(offset, blockEnd);
+                read(channel, md, position, end);
+                position = end;
+                if (position == blockEnd) blocks.add(hex(md.digest()));
+            }
+        }
+
+        private void read(FileChannel channel, MessageDigest digest, long from, long to) throws IOException {
+            while (from < to) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), to - from));
+                int n = channel.read(buffer, from);
+                if (n < 0) throw new EOFException();
+                buffer.flip();
+                digest.update(buffer);
+                from += n;
+            }
+        }
+
+        // Digest of the bytes after the last whole block, leaving md to carry on
+        private String current() {
+            try {
+                return hex(((MessageDigest) md.clone()).digest());
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e); // the platform MD5 is cloneable
+            }
+        }
+
+        private static String hex(byte[] digest) {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) sb.append(String.format("%02x", b & 0xFF));
+            return sb.toString();
+        }
+
+        private static MessageDigest md5() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the saved checkpoint, or null if there is none, it belongs to another input or
+     *         options, or it cannot be read
+     */
+    static ConversionCheckpoint load(Path path, String identity) {
+        if (!Files.isRegularFile(path)) return null;
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            props.load(in);
+            if (!identity.equals(props.getProperty("identity"))) return null;
+
+            ConversionCheckpoint cp = new ConversionCheckpoint(path, identity);
+            int columns = Integer.parseInt(props.getProperty("columns"));
+            for (int i = 0; i < columns; i++) cp.headers.add(required(props, "column." + i));
+            String parents = required(props, "input.parents");
+            cp.voucherParents = parents.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(parents.split("/")));
+            cp.inputOffset = Long.parseLong(props.getProperty("input.offset"));
+            String blocks = required(props, "input.blocks");
+            cp.inputBlocks = blocks.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(blocks.split(",")));
+            cp.inputFingerprint = required(props, "input.fingerprint");
+            cp.vouchers = Long.parseLong(props.getProperty("vouchers"));
+            cp.skipRows = Integer.parseInt(props.getProperty("skip.rows"));
+            cp.dataRows = Long.parseLong(props.getProperty("rows.data"));
+            cp.rejectedRows = Long.parseLong(props.getProperty("rows.rejected"));
+            cp.outputBytes = Long.parseLong(props.getProperty("output.bytes"));
+            cp.rejectBytes = Long.parseLong(props.getProperty("rejects.bytes"));
+            cp.rejectsLogged = Long.parseLong(props.getProperty("rejects.logged"));
+            cp.rejectsDropped = Long.parseLong(props.getProperty("rejects.dropped"));
+            int reasons = Integer.parseInt(props.getProperty("reasons"));
+            for (int i = 0; i < reasons; i++) {
+                cp.reasonCounts.put(required(props, "reason." + i), Long.parseLong(props.getProperty("reason." + i + ".count")));
+            }
+            cp.completedParts = Integer.parseInt(props.getProperty("parts.completed"));
+            cp.saved = true;
+            return cp;
+        } catch (IOException | RuntimeException e) {
+            // Unreadable or from an older layout: start over
+            return null;
+        }
+    }
+
+    private static String required(Properties props, String key) {
+        String value = props.getProperty(key);
+        if (value == null) throw new IllegalArgumentException("Missing " + key);
+        return value;
+    }
+
+    /**
+     * Writes the checkpoint to a temp file and moves it over the previous one.
+     */
+    void save() throws IOException {
+        Properties props = new Properties();
+        props.setProperty("identity", identity);
+        props.setProperty("columns", Integer.toString(headers.size()));
+        for (int i = 0; i < headers.size(); i++) props.setProperty("column." + i, headers.get(i));
+        // Element names cannot contain '/'
+        if (voucherParents != null) props.setProperty("input.parents", String.join("/", voucherParents));
+        props.setProperty("input.offset", Long.toString(inputOffset));
+        props.setProperty("input.blocks", String.join(",", inputBlocks));
+        props.setProperty("input.fingerprint", inputFingerprint);
+        props.setProperty("vouchers", Long.toString(vouchers));
+        props.setProperty("skip.rows", Integer.toString(skipRows));
+        props.setProperty("rows.data", Long.toString(dataRows));
+        props.setProperty("rows.rejected", Long.toString(rejectedRows));
+        props.setProperty("output.bytes", Long.toString(outputBytes));
+        props.setProperty("rejects.bytes", Long.toString(rejectBytes));
+        props.setProperty("rejects.logged", Long.toString(rejectsLogged));
+        props.setProperty("rejects.dropped", Long.toString(rejectsDropped));
+        props.setProperty("reasons", Integer.toString(reasonCounts.size()));
+        int i = 0;
+        for (Map.Entry<String, Long> e : reasonCounts.entrySet()) {
+            props.setProperty("reason." + i, e.getKey());
+            props.setProperty("reason." + i + ".count", Long.toString(e.getValue()));
+            i++;
+        }
+        props.setProperty("parts.completed", Integer.toString(completedParts));
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            props.store(out, "Resume point of a conversion");
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        saved = true;
+    }
+
+    /**
+     * @return true once the checkpoint exists on disk
+     */
+    boolean isSaved() {
+        return saved;
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+        saved = false;
+    }
+}
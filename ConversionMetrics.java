@@ -0,0 +1,214 @@
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and phase timers of every conversion, so it can be seen where the
+ * time goes: exposed as a platform MBean (see ConversionMetricsMBean, readable with jconsole
+ * or any JMX client) and, with -Dxmlparser.metrics.dumpSeconds=N, printed every N seconds.
+ *
+ * Conversions of a batch run concurrently, so everything is kept in LongAdders, which do not
+ * contend between threads. The row loop only increments the row counters; validation and
+ * cell writing are timed on one row in every SAMPLE_EVERY_ROWS and scaled up (see
+ * RowSampler), so the clock is not read around every row. Allocation is read from the JVM's
+ * per-thread allocation counter where it has one; it covers the thread running processFile,
+ * not the parallel parse workers or the threads writing split workbooks.
+ */
+final class ConversionMetrics implements ConversionMetricsMBean {
+
+    static final String OBJECT_NAME = "xmlparser:type=ConversionMetrics";
+
+    /** System property with the interval of the periodic dump in seconds; off by default. */
+    static final String DUMP_PROPERTY = "xmlparser.metrics.dumpSeconds";
+
+    static final int SAMPLE_EVERY_ROWS = 64;
+
+    enum Phase { SCAN, PARSE, VALIDATE, CELL_WRITE, AUTOSIZE, FLUSH, MOVE }
+
+    private static ConversionMetrics shared;
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder rowsRejected = new LongAdder();
+    private final LongAdder inputBytes = new LongAdder();
+    private final LongAdder outputBytes = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+
+    ConversionMetrics() {
+        for (int i = 0; i < phaseNanos.length; i++) phaseNanos[i] = new LongAdder();
+    }
+
+    /**
+     * @return the metrics of this JVM; registered as an MBean, and the periodic dump started
+     *         if DUMP_PROPERTY is set, on first use
+     */
+    static synchronized ConversionMetrics shared() {
+        if (shared == null) {
+            shared = new ConversionMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(shared, new ObjectName(OBJECT_NAME));
+            } catch (Exception | LinkageError e) {
+                // No JMX (or a second copy of this class in the JVM): the counters still work
+                System.err.println("[ERR] Conversion metrics not registered with JMX: " + e);
+            }
+            long dumpSeconds = Long.getLong(DUMP_PROPERTY, 0);
+            if (dumpSeconds > 0) shared.startDump(dumpSeconds);
+        }
+        return shared;
+    }
+
+    /**
+     * Samples the validation and cell-write time of the rows of one conversion. Used by the
+     * single thread writing the rows; the totals go to the shared adders once, in flush().
+     */
+    final class RowSampler {
+        private int countdown = SAMPLE_EVERY_ROWS;
+        private long validateNanos;
+        private long writeNanos;
+
+        /**
+         * @return true if the current row is to be timed
+         */
+        boolean sample() {
+            if (--countdown > 0) return false;
+            countdown = SAMPLE_EVERY_ROWS;
+            return true;
+        }
+
+        void sampled(long validate, long write) {
+            validateNanos += validate * SAMPLE_EVERY_ROWS;
+            writeNanos += write * SAMPLE_EVERY_ROWS;
+        }
+
+        /**
+         * @return the estimated validation and write time since the last flush
+         */
+        long flush() {
+            add(Phase.VALIDATE, validateNanos);
+            add(Phase.CELL_WRITE, writeNanos);
+            long total = validateNanos + writeNanos;
+            validateNanos = 0;
+            writeNanos = 0;
+            return total;
+        }
+    }
+
+    RowSampler rowSampler() {
+        return new RowSampler();
+    }
+
+    void add(Phase phase, long nanos) {
+        if (nanos > 0) phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    void conversionStarted() {
+        started.increment();
+        active.increment();
+    }
+
+    /**
+     * @param allocated bytes the converting thread allocated, negative if unknown
+     */
+    void conversionEnded(boolean ok, long input, long output, long allocated) {
+        active.decrement();
+        (ok ? completed : failed).increment();
+        if (ok) {
+            inputBytes.add(input);
+            outputBytes.add(output);
+        }
+        if (allocated > 0) allocatedBytes.add(allocated);
+    }
+
+    void rowWritten() {
+        rowsWritten.increment();
+    }
+
+    void rowRejected() {
+        rowsRejected.increment();
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or -1 if the JVM does not count them
+     */
+    static long threadAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private void startDump(long seconds) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "conversion-metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(() -> System.out.println("[METRICS] " + summary()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    private long millis(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum() / 1_000_000;
+    }
+
+    @Override public long getConversionsStarted() { return started.sum(); }
+    @Override public long getConversionsCompleted() { return completed.sum(); }
+    @Override public long getConversionsFailed() { return failed.sum(); }
+    @Override public long getActiveConversions() { return active.sum(); }
+    @Override public long getRowsWritten() { return rowsWritten.sum(); }
+    @Override public long getRowsRejected() { return rowsRejected.sum(); }
+    @Override public long getInputBytes() { return inputBytes.sum(); }
+    @Override public long getOutputBytes() { return outputBytes.sum(); }
+    @Override public long getScanMillis() { return millis(Phase.SCAN); }
+    @Override public long getParseMillis() { return millis(Phase.PARSE); }
+    @Override public long getValidateMillis() { return millis(Phase.VALIDATE); }
+    @Override public long getCellWriteMillis() { return millis(Phase.CELL_WRITE); }
+    @Override public long getAutosizeMillis() { return millis(Phase.AUTOSIZE); }
+    @Override public long getFlushMillis() { return millis(Phase.FLUSH); }
+    @Override public long getMoveMillis() { return millis(Phase.MOVE); }
+
+    @Override
+    public long getAllocatedBytes() {
+        return threadAllocatedBytes() < 0 ? -1 : allocatedBytes.sum();
+    }
+
+    @Override
+    public long getAllocatedBytesPerRow() {
+        long rows = rowsWritten.sum() + rowsRejected.sum();
+        long allocated = getAllocatedBytes();
+        return rows > 0 && allocated >= 0 ? allocated / rows : 0;
+    }
+
+    @Override
+    public String summary() {
+        return String.format(Locale.ROOT,
+                "conversions=%d done=%d failed=%d active=%d rows=%d rejected=%d in=%.1fMB out=%.1fMB"
+                        + " scan=%dms parse=%dms validate=%dms cellWrite=%dms autosize=%dms flush=%dms move=%dms"
+                        + " allocated=%.1fMB (%d B/row)",
+                getConversionsStarted(), getConversionsCompleted(), getConversionsFailed(), getActiveConversions(),
+                getRowsWritten(), getRowsRejected(), getInputBytes() / 1048576.0, getOutputBytes() / 1048576.0,
+                getScanMillis(), getParseMillis(), getValidateMillis(), getCellWriteMillis(), getAutosizeMillis(),
+                getFlushMillis(), getMoveMillis(), getAllocatedBytes() / 1048576.0, getAllocatedBytesPerRow());
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder a : new LongAdder[] { started, completed, failed, rowsWritten, rowsRejected, inputBytes,
+                outputBytes, allocatedBytes }) {
+            a.reset();
+        }
+        for (LongAdder a : phaseNanos) a.reset();
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Management interface of ConversionMetrics, registered with the platform MBean server as
+ * xmlparser:type=ConversionMetrics (see ConversionMetrics.OBJECT_NAME). Values are totals over
+ * every conversion since the JVM started or since reset(); times are in milliseconds.
+ */
+public interface ConversionMetricsMBean {
+
+    long getConversionsStarted();
+
+    long getConversionsCompleted();
+
+    long getConversionsFailed();
+
+    long getActiveConversions();
+
+    long getRowsWritten();
+
+    long getRowsRejected();
+
+    long getInputBytes();
+
+    long getOutputBytes();
+
+    /** Header passes, including the look for new vouchers of incremental runs */
+    long getScanMillis();
+
+    /** Second passes minus the time spent validating and writing rows */
+    long getParseMillis();
+
+    /** Estimated from a sample of the rows */
+    long getValidateMillis();
+
+    /** Estimated from a sample of the rows */
+    long getCellWriteMillis();
+
+    /** Applying the estimated column widths to SXSSF sheets */
+    long getAutosizeMillis();
+
+    /** Writing out workbooks and closing CSV/JSONL files */
+    long getFlushMillis();
+
+    /** Moving finished workbooks into place */
+    long getMoveMillis();
+
+    /** Heap allocated by the threads running processFile, -1 if the JVM cannot measure it */
+    long getAllocatedBytes();
+
+    long getAllocatedBytesPerRow();
+
+    /** One line with all of the above */
+    String summary();
+
+    void reset();
+}
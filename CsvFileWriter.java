@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * CSV output straight to a FileChannel (see Utf8FileWriter). Values are escaped and encoded in
+ * one pass.
+ *
+ * Quoting is the converter's original rule: a value is quoted when it contains a comma, a
+ * quote or a line feed, and quotes are doubled. Rows end with the platform line separator.
+ */
+final class CsvFileWriter extends Utf8FileWriter {
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private boolean rowStarted;
+
+    /**
+     * @param gzip true to write gzip-compressed output
+     */
+    CsvFileWriter(Path out, boolean gzip) throws IOException {
+        this(out, gzip, 0);
+    }
+
+    /**
+     * @param resumeAt file length returned by sync() to continue from, or 0 for a new file
+     */
+    CsvFileWriter(Path out, boolean gzip, long resumeAt) throws IOException {
+        super(out, gzip, resumeAt);
+    }
+
+    void writeRow(List<String> values) throws IOException {
+        for (String v : values) cell(v);
+        endRow();
+    }
+
+    /**
+     * Writes the value in one pass: it is encoded straight into the buffer and the first
+     * comma, quote or line feed moves what was written so far one byte on to open the quote.
+     * Values too long to fit the buffer at their worst-case length are scanned first instead.
+     */
+    void cell(String value) throws IOException {
+        if (rowStarted) put((byte) ',');
+        rowStarted = true;
+        if (value == null || value.isEmpty()) return;
+
+        // Every char three bytes or a doubled quote, plus both quotes: no flush can intervene
+        long worstCase = 3L * value.length() + 2;
+        if (buffer.remaining() < worstCase) {
+            flush();
+            if (buffer.remaining() < worstCase) {
+                longCell(value);
+                return;
+            }
+        }
+        int start = buffer.position();
+        boolean quote = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n') {
+                if (!quote) {
+                    openQuote(start);
+                    quote = true;
+                }
+                if (c == '"') buffer.put((byte) '"');
+            }
+            i = putChar(value, i);
+        }
+        if (quote) buffer.put((byte) '"');
+    }
+
+    // Inserts the opening quote at start, after the bytes of the value written since
+    private void openQuote(int start) {
+        int end = buffer.position();
+        for (int p = end; p > start; p--) buffer.put(p, buffer.get(p - 1));
+        buffer.put(start, (byte) '"');
+        buffer.position(end + 1);
+    }
+
+    private void longCell(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n';
+        }
+        if (quote) put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') put((byte) '"');
+            i = putChar(value, i);
+        }
+        if (quote) put((byte) '"');
+    }
+
+    void endRow() throws IOException {
+        put(LINE_SEPARATOR);
+        rowStarted = false;
+    }
+}
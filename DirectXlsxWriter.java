@@ -0,0 +1,404 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the Data/Rejected workbook as SpreadsheetML straight into the output zip, without
+ * POI's Row/Cell objects or its temp-file sheet buffers. The styles.xml is fixed and mirrors
+ * StyleRegistry: style 1 is the header style, data styles follow in StyleRegistry order (see
+ * dataStyle), so the output looks the same as the SXSSF workbook.
+ *
+ * Every sheet is spooled to a file next to the output as its rows arrive (Data sheets as
+ * report_out.xlsx.data1, ..., Rejected sheets as .rejected1, ...) and copied into the zip on
+ * finish(), so no rows are held on the heap. The column widths have to precede the sheet
+ * data; written last, they cover every row, as ColumnWidths does for the SXSSF workbook.
+ * nextDataSheet and nextRejectedSheet continue on Data_2, Rejected_2, ... once a sheet is
+ * full; the workbook part listing the sheets is written last, when their number is known.
+ *
+ * Cells are written like SXSSF writes them: numbers and date serials as numeric cells
+ * (infinite and NaN values as the #DIV/0! and #NUM! errors), everything else as inline strings.
+ * With a SharedStringTable, Data sheet text goes to xl/sharedStrings.xml instead as long as the
+ * table has room.
+ */
+final class DirectXlsxWriter implements Closeable {
+
+    static final int HEADER_STYLE = 1;
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PKG_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String XML_DECL = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private final Path out;
+    private final ZipOutputStream zip;
+    private final Writer zipWriter;
+    private final List<String> headers;
+    private final ColumnWidths widths;
+    private final SharedStringTable sharedStrings;
+    private final String[] columnLetters;
+
+    // Spool of the current Data sheet
+    private Writer sheet;
+    private final List<Path> dataSheets = new ArrayList<>();
+    private final List<Path> rejectedSheets = new ArrayList<>();
+    private Writer rejected;
+    private int rejectedRows;
+    private String rowNumber;
+
+    /**
+     * @param out file the workbook is written to
+     * @param headers Data sheet column titles, written as row 1
+     * @param widths filled in by the caller for each data row written; read on finish()
+     * @param sharedStrings table for Data sheet text, or null to write all text as inline strings
+     */
+    DirectXlsxWriter(Path out, List<String> headers, ColumnWidths widths, SharedStringTable sharedStrings)
+            throws IOException {
+        this.out = out;
+        this.zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(out), 256 * 1024));
+        this.zip.setLevel(Deflater.BEST_SPEED);
+        this.zipWriter = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+        this.headers = headers;
+        this.widths = widths;
+        this.sharedStrings = sharedStrings;
+        this.columnLetters = new String[headers.size()];
+        for (int i = 0; i < columnLetters.length; i++) {
+            columnLetters[i] = columnLetter(i);
+        }
+
+        entry("xl/styles.xml", stylesXml());
+        sheet = spool(dataSheets, ".data");
+        writeHeaderRow();
+        nextRejectedSheet();
+    }
+
+    /**
+     * @return style index of a data cell; same combinations as StyleRegistry.data
+     */
+    static int dataStyle(boolean stripe, boolean date) {
+        return 2 + ((stripe ? 2 : 0) | (date ? 1 : 0));
+    }
+
+    /**
+     * Starts a Data sheet row; rowIdx is 0-based like POI's, row 0 is the header.
+     */
+    void startRow(int rowIdx) throws IOException {
+        rowNumber = Integer.toString(rowIdx + 1);
+        sheet.write("<row r=\"");
+        sheet.write(rowNumber);
+        sheet.write("\">");
+    }
+
+    void number(int column, double value, int style) throws IOException {
+        if (Double.isInfinite(value) || Double.isNaN(value)) {
+            startCell(column, style, "e");
+            sheet.write(Double.isNaN(value) ? "<v>#NUM!</v></c>" : "<v>#DIV/0!</v></c>");
+            return;
+        }
+        startCell(column, style, null);
+        sheet.write("<v>");
+        sheet.write(Double.toString(value));
+        sheet.write("</v></c>");
+    }
+
+    void text(int column, String value, int style) throws IOException {
+        int id = sharedStrings != null ? sharedStrings.index(value) : -1;
+        if (id < 0) {
+            writeInlineString(sheet, columnLetters[column], rowNumber, value, style);
+            return;
+        }
+        startCell(column, style, "s");
+        sheet.write("<v>");
+        sheet.write(Integer.toString(id));
+        sheet.write("</v></c>");
+    }
+
+    void endRow() throws IOException {
+        sheet.write("</row>\n");
+    }
+
+    /**
+     * Completes the current Data sheet and starts the next one (Data_2, Data_3, ...) with
+     * the header row; row indexes start over at 1. All Data sheets get the same column widths.
+     */
+    void nextDataSheet() throws IOException {
+        sheet.close();
+        sheet = spool(dataSheets, ".data");
+        writeHeaderRow();
+    }
+
+    /**
+     * Starts the next Rejected sheet (Rejected_2, ...) with its header row.
+     */
+    void nextRejectedSheet() throws IOException {
+        if (rejected != null) rejected.close();
+        rejected = spool(rejectedSheets, ".rejected");
+        rejected.write("<row r=\"1\">");
+        writeInlineString(rejected, "A", "1", "SourceFile", -1);
+        writeInlineString(rejected, "B", "1", "RowContext", -1);
+        writeInlineString(rejected, "C", "1", "Reason", -1);
+        rejected.write("</row>");
+        rejectedRows = 1;
+    }
+
+    void rejected(String sourceFile, String rowContext, String reason) throws IOException {
+        String r = Integer.toString(++rejectedRows);
+        rejected.write("<row r=\"");
+        rejected.write(r);
+        rejected.write("\">");
+        writeInlineString(rejected, "A", r, sourceFile, -1);
+        writeInlineString(rejected, "B", r, rowContext, -1);
+        writeInlineString(rejected, "C", r, reason, -1);
+        rejected.write("</row>\n");
+    }
+
+    /**
+     * Completes all sheets and the zip. The file is a valid workbook only after this returns.
+     */
+    void finish() throws IOException {
+        sheet.close();
+        rejected.close();
+        int number = 0;
+        for (Path spool : dataSheets) copySheet(++number, spool, true);
+        for (Path spool : rejectedSheets) copySheet(++number, spool, false);
+
+        if (sharedStrings != null) {
+            zip.putNextEntry(new ZipEntry("xl/sharedStrings.xml"));
+            zipWriter.write(XML_DECL);
+            sharedStrings.writeTo(zipWriter, MAIN_NS);
+            zipWriter.flush();
+            zip.closeEntry();
+        }
+        writeWorkbookParts();
+        zip.finish();
+        zipWriter.close();
+    }
+
+    /**
+     * Closes the output and removes the spooled sheets; an unfinished workbook is left
+     * incomplete.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            zipWriter.close();
+        } finally {
+            try { sheet.close(); } catch (IOException ignore) {}
+            if (rejected != null) {
+                try { rejected.close(); } catch (IOException ignore) {}
+            }
+            for (Path spool : dataSheets) Files.deleteIfExists(spool);
+            for (Path spool : rejectedSheets) Files.deleteIfExists(spool);
+        }
+    }
+
+    static String sheetName(String base, int number) {
+        return number == 1 ? base : base + "_" + number;
+    }
+
+    private void writeHeaderRow() throws IOException {
+        startRow(0);
+        for (int i = 0; i < headers.size(); i++) {
+            text(i, headers.get(i), HEADER_STYLE);
+        }
+        endRow();
+    }
+
+    // Opens the next spool file of a kind: report_out.xlsx.data1, report_out.xlsx.rejected2, ...
+    private Writer spool(List<Path> spools, String kind) throws IOException {
+        Path spool = out.resolveSibling(out.getFileName() + kind + (spools.size() + 1));
+        spools.add(spool);
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(spool), StandardCharsets.UTF_8),
+                64 * 1024);
+    }
+
+    // Puts a spooled sheet into the zip as worksheet number, with the column widths for Data sheets
+    private void copySheet(int number, Path spool, boolean cols) throws IOException {
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + number + ".xml"));
+        zipWriter.write(XML_DECL);
+        zipWriter.write("<worksheet xmlns=\"" + MAIN_NS + "\">");
+        if (cols) {
+            zipWriter.write("<cols>");
+            for (int i = 0; i < columnLetters.length; i++) {
+                String n = Integer.toString(i + 1);
+                zipWriter.write("<col min=\"" + n + "\" max=\"" + n + "\" width=\"" + widths.widthChars(i)
+                        + "\" customWidth=\"1\"/>");
+            }
+            zipWriter.write("</cols>");
+        }
+        zipWriter.write("<sheetData>");
+        zipWriter.flush();
+        // Spooled as UTF-8 like zipWriter writes, so the bytes go in as they are
+        Files.copy(spool, zip);
+        zipWriter.write("</sheetData></worksheet>");
+        zipWriter.flush();
+        zip.closeEntry();
+        Files.delete(spool);
+    }
+
+    private void startCell(int column, int style, String type) throws IOException {
+        sheet.write("<c r=\"");
+        sheet.write(columnLetters[column]);
+        sheet.write(rowNumber);
+        if (style >= 0) {
+            sheet.write("\" s=\"");
+            sheet.write(Integer.toString(style));
+        }
+        if (type != null) {
+            sheet.write("\" t=\"");
+            sheet.write(type);
+        }
+        sheet.write("\">");
+    }
+
+    private static void writeInlineString(Writer w, String column, String row, String value, int style) throws IOException {
+        w.write("<c r=\"");
+        w.write(column);
+        w.write(row);
+        if (style >= 0) {
+            w.write("\" s=\"");
+            w.write(Integer.toString(style));
+        }
+        w.write("\" t=\"inlineStr\"><is><t");
+        if (!value.isEmpty() && (value.charAt(0) <= ' ' || value.charAt(value.length() - 1) <= ' ')) {
+            w.write(" xml:space=\"preserve\"");
+        }
+        w.write('>');
+        writeEscaped(w, value);
+        w.write("</t></is></c>");
+    }
+
+    /**
+     * Escapes markup characters; characters XML 1.0 cannot carry become '?', as in POI.
+     */
+    static void writeEscaped(Writer w, String s) throws IOException {
+        int last = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String rep;
+            switch (c) {
+                case '<': rep = "&lt;"; break;
+                case '>': rep = "&gt;"; break;
+                case '&': rep = "&amp;"; break;
+                case '"': rep = "&quot;"; break;
+                case '\n': rep = "&#xa;"; break;
+                case '\r': rep = "&#xd;"; break;
+                case '\t': rep = "&#x9;"; break;
+                default:
+                    if (c < ' ' || c == '\uFFFE' || c == '\uFFFF') {
+                        rep = "?";
+                        break;
+                    }
+                    continue;
+            }
+            w.write(s, last, i - last);
+            w.write(rep);
+            last = i + 1;
+        }
+        w.write(s, last, s.length() - last);
+    }
+
+    static String columnLetter(int column) {
+        StringBuilder sb = new StringBuilder(3);
+        for (int n = column + 1; n > 0; n = (n - 1) / 26) {
+            sb.insert(0, (char) ('A' + (n - 1) % 26));
+        }
+        return sb.toString();
+    }
+
+    // Package and workbook parts listing the sheets: Data sheets first, then Rejected sheets
+    private void writeWorkbookParts() throws IOException {
+        int sheetCount = dataSheets.size() + rejectedSheets.size();
+        StringBuilder types = new StringBuilder(XML_DECL)
+                .append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+                .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+                .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+                .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+                .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        StringBuilder sheets = new StringBuilder(XML_DECL)
+                .append("<workbook xmlns=\"").append(MAIN_NS).append("\" xmlns:r=\"").append(REL_NS).append("\"><sheets>");
+        StringBuilder rels = new StringBuilder(XML_DECL)
+                .append("<Relationships xmlns=\"").append(PKG_REL_NS).append("\">");
+        for (int i = 1; i <= sheetCount; i++) {
+            String name = i <= dataSheets.size() ? sheetName("Data", i) : sheetName("Rejected", i - dataSheets.size());
+            types.append("<Override PartName=\"/xl/worksheets/sheet").append(i)
+                 .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+            sheets.append("<sheet name=\"").append(name).append("\" sheetId=\"").append(i)
+                  .append("\" r:id=\"rId").append(i).append("\"/>");
+            rels.append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(REL_NS)
+                .append("/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+        }
+        rels.append("<Relationship Id=\"rId").append(sheetCount + 1).append("\" Type=\"").append(REL_NS)
+            .append("/styles\" Target=\"styles.xml\"/>");
+        if (sharedStrings != null) {
+            types.append("<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>");
+            rels.append("<Relationship Id=\"rId").append(sheetCount + 2).append("\" Type=\"").append(REL_NS)
+                .append("/sharedStrings\" Target=\"sharedStrings.xml\"/>");
+        }
+
+        entry("[Content_Types].xml", types.append("</Types>").toString());
+        entry("_rels/.rels", XML_DECL
+                + "<Relationships xmlns=\"" + PKG_REL_NS + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        entry("xl/workbook.xml", sheets.append("</sheets></workbook>").toString());
+        entry("xl/_rels/workbook.xml.rels", rels.append("</Relationships>").toString());
+    }
+
+    /**
+     * Fonts: 0 default, 1 data (black), 2 header (bold black). Fills: 0 none, 1 gray125 (both
+     * required), 2 white, 3 pale blue, 4 grey 25%. Borders: 0 none, 1 thin.
+     */
+    private static String stylesXml() {
+        StringBuilder sb = new StringBuilder(XML_DECL);
+        sb.append("<styleSheet xmlns=\"").append(MAIN_NS).append("\">")
+          .append("<numFmts count=\"1\"><numFmt numFmtId=\"164\" formatCode=\"dd.MM.yyyy\"/></numFmts>")
+          .append("<fonts count=\"3\">")
+          .append("<font><sz val=\"11\"/><name val=\"Calibri\"/><family val=\"2\"/></font>")
+          .append("<font><sz val=\"11\"/><color indexed=\"8\"/><name val=\"Calibri\"/><family val=\"2\"/></font>")
+          .append("<font><b/><sz val=\"11\"/><color indexed=\"8\"/><name val=\"Calibri\"/><family val=\"2\"/></font>")
+          .append("</fonts>")
+          .append("<fills count=\"5\">")
+          .append("<fill><patternFill patternType=\"none\"/></fill>")
+          .append("<fill><patternFill patternType=\"gray125\"/></fill>")
+          .append("<fill><patternFill patternType=\"solid\"><fgColor indexed=\"9\"/></patternFill></fill>")
+          .append("<fill><patternFill patternType=\"solid\"><fgColor indexed=\"44\"/></patternFill></fill>")
+          .append("<fill><patternFill patternType=\"solid\"><fgColor indexed=\"22\"/></patternFill></fill>")
+          .append("</fills>")
+          .append("<borders count=\"2\">")
+          .append("<border><left/><right/><top/><bottom/><diagonal/></border>")
+          .append("<border><left style=\"thin\"/><right style=\"thin\"/><top style=\"thin\"/><bottom style=\"thin\"/><diagonal/></border>")
+          .append("</borders>")
+          .append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>")
+          .append("<cellXfs count=\"6\">")
+          .append("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+        appendXf(sb, 0, 2, 4, 1);
+        for (int i = 0; i < 4; i++) {
+            boolean stripe = (i & 2) != 0;
+            appendXf(sb, (i & 1) != 0 ? 164 : 0, 1, stripe ? 3 : 2, 1);
+        }
+        sb.append("</cellXfs>")
+          .append("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>")
+          .append("</styleSheet>");
+        return sb.toString();
+    }
+
+    private static void appendXf(StringBuilder sb, int numFmtId, int fontId, int fillId, int borderId) {
+        sb.append("<xf numFmtId=\"").append(numFmtId).append("\" fontId=\"").append(fontId)
+          .append("\" fillId=\"").append(fillId).append("\" borderId=\"").append(borderId)
+          .append("\" xfId=\"0\" applyNumberFormat=\"1\" applyFont=\"1\" applyFill=\"1\" applyBorder=\"1\" applyAlignment=\"1\">")
+          .append("<alignment horizontal=\"center\"/></xf>");
+    }
+
+    private void entry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zipWriter.write(content);
+        zipWriter.flush();
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Converts the XML files that land in a drop folder, until stop() is called. A WatchService
+ * reports created and modified files; each is converted once it has been left unchanged
+ * (same size and modification time) for settleMillis. Files that are copied or written in
+ * place produce a stream of modify events, and reading one before the last event would parse
+ * a truncated document. Settled files are queued on a fixed pool of worker threads, each
+ * running an ordinary XmlParser.processFile.
+ *
+ * XML files already in the folder when the watcher starts are converted too, unless their
+ * output is complete and newer than the input. A file that changes again after it was
+ * converted is converted again; one that changes while it is being converted is converted
+ * once more after that run.
+ */
+final class DropFolderWatcher {
+
+    private static final long POLL_MILLIS = 250;
+
+    /**
+     * Size and modification time of a file when it was last seen.
+     */
+    private static final class Stamp {
+        final long size;
+        final FileTime modified;
+
+        Stamp(long size, FileTime modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        static Stamp of(Path p) throws IOException {
+            return new Stamp(Files.size(p), Files.getLastModifiedTime(p));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Stamp && ((Stamp) o).size == size && ((Stamp) o).modified.equals(modified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + modified.hashCode();
+        }
+    }
+
+    private final Path directory;
+    private final BatchConverter.ParserFactory factory;
+    private final long settleNanos;
+    private final Consumer<BatchConverter.Result> onResult;
+    private final ExecutorService workers;
+
+    // Watcher thread only: files waiting to settle, with their last stamp and when it changed
+    private final Map<Path, Stamp> pending = new HashMap<>();
+    private final Map<Path, Long> changedAt = new HashMap<>();
+
+    // Shared with the workers
+    private final Set<Path> inProgress = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Stamp> converted = new ConcurrentHashMap<>();
+    private final Set<XmlParser> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopped;
+
+    /**
+     * @param threads files converted at the same time
+     * @param settleMillis how long a file must stay unchanged before it is converted
+     * @param onResult receives the outcome of every conversion, on the worker thread
+     */
+    DropFolderWatcher(Path directory, BatchConverter.ParserFactory factory, int threads, long settleMillis,
+                      Consumer<BatchConverter.Result> onResult) {
+        this.directory = directory;
+        this.factory = factory;
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        this.onResult = onResult;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "drop-folder-convert");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    static boolean isXmlFile(Path p) {
+        return p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".xml") && Files.isRegularFile(p);
+    }
+
+    /**
+     * Watches the folder until stop() is called or the thread is interrupted. Conversions
+     * still running then are cancelled.
+     */
+    void run() throws IOException, InterruptedException {
+        if (!Files.isDirectory(directory)) throw new IllegalArgumentException("No such directory: " + directory);
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            log("Watching " + directory.toAbsolutePath() + " for XML files");
+            scan(true);
+
+            while (!stopped) {
+                WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            scan(false); // events were lost, look at everything again
+                        } else {
+                            Path p = directory.resolve((Path) event.context());
+                            if (isXmlFile(p)) changed(p);
+                        }
+                    }
+                    if (!key.reset()) throw new IOException("Drop folder is no longer accessible: " + directory);
+                }
+                submitSettled();
+            }
+        } finally {
+            stop();
+            workers.shutdown();
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Stops watching and cancels the running conversions.
+     */
+    void stop() {
+        stopped = true;
+        for (XmlParser p : running) p.cancel();
+    }
+
+    // Queues every XML file in the folder; at startup files with an up-to-date output are skipped
+    private void scan(boolean skipUpToDate) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path p : (Iterable<Path>) files.filter(DropFolderWatcher::isXmlFile).sorted()::iterator) {
+                if (skipUpToDate && isUpToDate(p)) {
+                    converted.put(p, Stamp.of(p));
+                } else {
+                    changed(p);
+                }
+            }
+        }
+    }
+
+    private boolean isUpToDate(Path input) {
+        try {
+            XmlParser parser = factory.create(input);
+            Path output = parser.getOutputPath();
+            // A checkpoint means the output is from an interrupted, resumable conversion, or from
+            // an incremental one that only has to check for new vouchers
+            return Files.exists(output) && !Files.exists(parser.getCheckpointPath())
+                    && Files.getLastModifiedTime(output).compareTo(Files.getLastModifiedTime(input)) >= 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void changed(Path p) {
+        try {
+            pending.put(p, Stamp.of(p));
+            changedAt.put(p, System.nanoTime());
+        } catch (IOException e) {
+            // Already gone again
+            pending.remove(p);
+            changedAt.remove(p);
+        }
+    }
+
+    private void submitSettled() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Stamp>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Stamp> e = it.next();
+            Path p = e.getKey();
+            if (now - changedAt.get(p) < settleNanos || inProgress.contains(p)) continue;
+
+            Stamp current;
+            try {
+                current = Stamp.of(p);
+            } catch (IOException gone) {
+                it.remove();
+                changedAt.remove(p);
+                continue;
+            }
+            if (!current.equals(e.getValue())) {
+                // Still being written: wait for another quiet period
+                e.setValue(current);
+                changedAt.put(p, now);
+                continue;
+            }
+            it.remove();
+            changedAt.remove(p);
+            if (current.equals(converted.get(p))) continue; // this version was converted already
+
+            inProgress.add(p);
+            workers.execute(() -> convert(p, current));
+        }
+    }
+
+    private void convert(Path input, Stamp stamp) {
+        XmlParser parser = null;
+        BatchConverter.Result result;
+        long start = System.nanoTime();
+        try {
+            if (stopped) return;
+            parser = factory.create(input);
+            running.add(parser);
+            if (stopped) parser.cancel();
+            parser.processFile();
+            converted.put(input, stamp);
+            result = new BatchConverter.Result(input, BatchConverter.Status.DONE, parser.getOutputPaths(), null,
+                    stamp.size, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            result = new BatchConverter.Result(input, BatchConverter.Status.CANCELLED, Collections.<Path>emptyList(),
+                    e, stamp.size, System.nanoTime() - start);
+        } catch (Throwable t) {
+            // Not retried until the file changes
+            converted.put(input, stamp);
+            BatchConverter.Status status = parser != null && parser.isCanceled()
+                    ? BatchConverter.Status.CANCELLED : BatchConverter.Status.FAILED;
+            result = new BatchConverter.Result(input, status, Collections.<Path>emptyList(), t, stamp.size,
+                    System.nanoTime() - start);
+        } finally {
+            if (parser != null) running.remove(parser);
+            inProgress.remove(input);
+        }
+        onResult.accept(result);
+    }
+
+    private static void log(String s) {
+        System.out.println("[INFO] " + s);
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * The small part of a pull parser that the GL_VOUCHER state machine in XmlParser needs.
+ * Implemented over StAX (XmlParser.StaxCursor) and directly over UTF-8 bytes (VoucherScanner).
+ */
+interface ElementCursor {
+
+    /**
+     * @return the next XMLStreamConstants event type; END_DOCUMENT once the input is exhausted
+     */
+    int next() throws Exception;
+
+    /**
+     * @return local name of the current START_ELEMENT or END_ELEMENT
+     */
+    String localName();
+
+    /**
+     * Reads the text of the current element, including the text of nested elements, up to its
+     * end tag and returns it trimmed.
+     */
+    String readElementText() throws Exception;
+
+    /**
+     * Consumes the current element like readElementText without materializing its text.
+     */
+    void skipElement() throws Exception;
+}
@@ -0,0 +1,148 @@
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+/**
+ * Recognizes dd.MM.yyyy cell values and converts them straight to Excel serial day numbers.
+ *
+ * Accepts exactly what LocalDate.parse with the dd.MM.yyyy pattern accepts (day overflow such as
+ * 31.02 is clamped to the end of the month). Anything that is not ten characters of the right
+ * shape is rejected by a few character checks. Posting dates repeat a lot, so resolved serials
+ * are kept in a small direct-mapped cache keyed by the packed digits; only a cache miss goes
+ * through java.util.Date and POI, which keeps the stored values identical to
+ * Cell.setCellValue(Date) for the start of the day in the local zone.
+ *
+ * Not thread-safe: use one instance per thread.
+ */
+final class FastDateParser {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+    private static final int CACHE_SIZE = 1024;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final int[] cacheKeys = new int[CACHE_SIZE];
+    private final double[] cacheSerials = new double[CACHE_SIZE];
+
+    private double serial;
+    private int year;
+    private int month;
+    private int day;
+
+    /**
+     * @return true if raw is a dd.MM.yyyy date; its serial is then available from excelSerial()
+     */
+    boolean parse(String raw) {
+        if (raw == null) return false;
+        int start = 0;
+        int end = raw.length();
+        while (start < end && raw.charAt(start) <= ' ') start++;
+        while (end > start && raw.charAt(end - 1) <= ' ') end--;
+
+        if (end - start != 10) {
+            // A signed year ("01.01.+10000") is the only longer form the formatter takes
+            if (end - start > 10 && raw.charAt(start + 2) == '.' && raw.charAt(start + 5) == '.') {
+                char sign = raw.charAt(start + 6);
+                if (sign == '+' || sign == '-') return parseLegacy(raw.substring(start, end));
+            }
+            return false;
+        }
+        if (raw.charAt(start + 2) != '.' || raw.charAt(start + 5) != '.') return false;
+        int day = digits(raw, start, 2);
+        int month = digits(raw, start + 3, 2);
+        int year = digits(raw, start + 6, 4);
+        if (day < 1 || month < 1 || year < 1 || day > 31 || month > 12) return false;
+
+        this.year = year;
+        this.month = month;
+        this.day = Math.min(day, lengthOfMonth(year, month));
+
+        int key = year * 10000 + month * 100 + day;
+        int slot = (key ^ (key >>> 7)) & (CACHE_SIZE - 1);
+        if (cacheKeys[slot] == key) {
+            serial = cacheSerials[slot];
+            return true;
+        }
+        LocalDate date = LocalDate.of(year, month, this.day);
+        serial = toExcelSerial(date);
+        cacheKeys[slot] = key;
+        cacheSerials[slot] = serial;
+        return true;
+    }
+
+    /**
+     * Cheap pre-check: false means parse() would reject the value. Used by callers that expect
+     * a number and only need to rule out the date interpretation.
+     */
+    static boolean hasDateShape(String raw) {
+        int start = 0;
+        int end = raw.length();
+        while (start < end && raw.charAt(start) <= ' ') start++;
+        while (end > start && raw.charAt(end - 1) <= ' ') end--;
+        return end - start >= 10 && raw.charAt(start + 2) == '.' && raw.charAt(start + 5) == '.';
+    }
+
+    /**
+     * @return the Excel serial of the last successful parse(); -1 for dates before 1900, as POI stores them
+     */
+    double excelSerial() {
+        return serial;
+    }
+
+    /**
+     * Calendar fields of the last successful parse(), with the day clamped like the serial
+     */
+    int year() {
+        return year;
+    }
+
+    int month() {
+        return month;
+    }
+
+    int day() {
+        return day;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Returns the value of count ASCII digits, or -1 if any of them is not a digit
+    private static int digits(String s, int from, int count) {
+        int v = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    private boolean parseLegacy(String trimmed) {
+        try {
+            LocalDate date = LocalDate.parse(trimmed, DATE_FORMAT);
+            serial = toExcelSerial(date);
+            year = date.getYear();
+            month = date.getMonthValue();
+            day = date.getDayOfMonth();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private double toExcelSerial(LocalDate date) {
+        return DateUtil.getExcelDate(Date.from(date.atStartOfDay(zone).toInstant()));
+    }
+}
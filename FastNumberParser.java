@@ -0,0 +1,141 @@
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.util.Locale;
+
+/**
+ * Parses cell values as numbers the way the exports write them: Turkish grouping and decimal
+ * separators ("1.234,56"), plain decimals with a comma or dot, and NBSP or blank grouping.
+ *
+ * The result is identical to the original NumberFormat(tr) / Double.parseDouble combination,
+ * including its quirks ("1234.56" reads as 123456 because '.' is the Turkish grouping
+ * separator). Plain ASCII input is handled in a single pass without regexes, exceptions or
+ * allocation; the rare forms that need the full rules (exponents, '+', Infinity/NaN,
+ * non-ASCII digits) go through the original code path.
+ *
+ * Not thread-safe: use one instance per thread.
+ */
+final class FastNumberParser {
+
+    private static final Locale TURKISH_LOCALE = new Locale("tr", "TR");
+
+    // Largest mantissa that is exact as a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private NumberFormat legacyFormat;
+    private double value;
+
+    /**
+     * @return true if raw is a number; the value is then available from value()
+     */
+    boolean parse(String raw) {
+        if (raw == null) return false;
+        final int len = raw.length();
+
+        int i = skipSpace(raw, 0, len);
+        if (i == len) return false;
+        boolean negative = false;
+        if (raw.charAt(i) == '-') {
+            negative = true;
+            i = skipSpace(raw, i + 1, len);
+        }
+
+        // Same walk as DecimalFormat: '.' groups digits anywhere before the decimal comma,
+        // a second separator after the comma or any other character ends the number.
+        long mantissa = 0;
+        int mantissaDigits = 0;
+        int droppedDigits = 0;
+        int fractionDigits = 0;
+        boolean truncated = false;
+        boolean sawDigit = false;
+        boolean sawSeparator = false;
+        boolean sawDecimal = false;
+        for (; i < len; i = skipSpace(raw, i + 1, len)) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                sawDigit = true;
+                if (sawDecimal) fractionDigits++;
+                if (mantissa == 0 && digit == 0) continue;
+                if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    mantissaDigits++;
+                } else {
+                    droppedDigits++;
+                    if (digit != 0) truncated = true;
+                }
+            } else if (c == ',') {
+                if (sawDecimal) break;
+                sawDecimal = true;
+                sawSeparator = true;
+            } else if (c == '.') {
+                if (sawDecimal) break;
+                sawSeparator = true;
+            } else if ((c == 'E' && sawDigit) || c >= 0x80 || c < ' ') {
+                // Exponent or a character the original rules treat specially
+                return parseLegacy(raw);
+            } else if (sawDigit) {
+                break;
+            } else if (!sawSeparator && (c == '+' || c == 'I' || c == 'N')) {
+                // "+1,5", "Infinity", "NaN" are only accepted by the Double.parseDouble fallback
+                return parseLegacy(raw);
+            } else {
+                return false;
+            }
+        }
+        if (!sawDigit) return false;
+
+        if (mantissa == 0) {
+            value = negative ? -0.0 : 0.0;
+            return true;
+        }
+        int exponent = droppedDigits - fractionDigits;
+        if (truncated || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            // Needs correct rounding of a long or large-exponent decimal
+            return parseLegacy(raw);
+        }
+        double d = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        value = negative ? -d : d;
+        return true;
+    }
+
+    /**
+     * @return the number read by the last successful parse()
+     */
+    double value() {
+        return value;
+    }
+
+    // Blank characters are removed from anywhere in the value, NBSP included
+    private static int skipSpace(String s, int i, int len) {
+        while (i < len) {
+            char c = s.charAt(i);
+            if (c != ' ' && c != '\u00A0' && c != '\t' && c != '\n' && c != '\r' && c != '\f' && c != '\u000B') break;
+            i++;
+        }
+        return i;
+    }
+
+    private boolean parseLegacy(String raw) {
+        if (raw.trim().isEmpty()) return false;
+        String trimmed = raw.trim().replace("\u00A0", "").replaceAll("\\s+", "");
+        if (legacyFormat == null) legacyFormat = NumberFormat.getInstance(TURKISH_LOCALE);
+        ParsePosition pos = new ParsePosition(0);
+        Number n = legacyFormat.parse(trimmed, pos);
+        if (pos.getIndex() != 0 && n != null) {
+            value = n.doubleValue();
+            return true;
+        }
+        try {
+            value = Double.parseDouble(trimmed.replace(",", "."));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * JSON Lines output: one object per row with every column as a member, in header order.
+ * The member prefixes ({"NAME": and ,"NAME":) are encoded once up front; values are written
+ * through the Utf8FileWriter buffer, so no maps, strings or reflection are involved per row.
+ *
+ * Missing fields are null and dates are ISO yyyy-MM-dd strings. Numbers, Turkish-formatted
+ * amounts included, are JSON numbers unless the column is an identifier or the text has
+ * another reading (see isUnambiguousNumber); those values keep their original text as a
+ * string.
+ */
+final class JsonLinesWriter extends Utf8FileWriter {
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    // Digits a double holds exactly, so readers parsing the number as one get the same value
+    private static final int MAX_SIGNIFICANT_DIGITS = 15;
+    // Integral values below this are written without a fraction
+    private static final double MAX_EXACT_INTEGER = 9007199254740992d;
+
+    private final byte[][] prefixes;
+
+    /**
+     * @param gzip true to write gzip-compressed output
+     */
+    JsonLinesWriter(Path out, List<String> columns, boolean gzip) throws IOException {
+        this(out, columns, gzip, 0);
+    }
+
+    /**
+     * @param resumeAt file length returned by sync() to continue from, or 0 for a new file
+     */
+    JsonLinesWriter(Path out, List<String> columns, boolean gzip, long resumeAt) throws IOException {
+        super(out, gzip, resumeAt);
+        this.prefixes = new byte[columns.size()][];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < prefixes.length; i++) {
+            sb.setLength(0);
+            sb.append(i == 0 ? '{' : ',');
+            appendQuoted(sb, columns.get(i));
+            sb.append(':');
+            prefixes[i] = sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    void nullValue(int column) throws IOException {
+        put(prefixes[column]);
+        put(NULL);
+    }
+
+    void string(int column, String value) throws IOException {
+        put(prefixes[column]);
+        put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                put((byte) '\\');
+                put((byte) c);
+            } else if (c < 0x20) {
+                putControl(c);
+            } else {
+                i = putChar(value, i);
+            }
+        }
+        put((byte) '"');
+    }
+
+    /**
+     * Writes a value that passed isUnambiguousNumber, read by FastNumberParser.
+     */
+    void number(int column, double value) throws IOException {
+        put(prefixes[column]);
+        if (value == Math.rint(value) && Math.abs(value) < MAX_EXACT_INTEGER) {
+            putLong((long) value);
+        } else {
+            String s = Double.toString(value);
+            for (int i = 0; i < s.length(); i++) put((byte) s.charAt(i));
+        }
+    }
+
+    /**
+     * @return true if the whole value is a number with only one reading: digits with an
+     *         optional minus, decimal comma and thousands grouping ("1.234,56", "-3,5",
+     *         "1 234", "42"), at most MAX_SIGNIFICANT_DIGITS digits and no leading zeros.
+     *         Values that also read as something else stay strings: "1.234" and "120.70" are
+     *         dot decimals or dot-grouped integers, "0012" is a code, "12abc" is text.
+     */
+    static boolean isUnambiguousNumber(String value) {
+        int n = value.length();
+        while (n > 0 && value.charAt(n - 1) <= ' ') n--;
+        int i = 0;
+        while (i < n && value.charAt(i) <= ' ') i++;
+        if (i < n && value.charAt(i) == '-') i++;
+        int intStart = i;
+        while (i < n && isDigit(value.charAt(i))) i++;
+        int digits = i - intStart;
+        if (digits == 0 || (digits > 1 && value.charAt(intStart) == '0')) return false;
+        char separator = 0;
+        if (i < n && value.charAt(i) != ',' && digits <= 3) {
+            separator = value.charAt(i);
+            if (separator != '.' && separator != ' ' && separator != '\u00A0') return false;
+            while (i + 4 <= n && value.charAt(i) == separator && isDigit(value.charAt(i + 1))
+                    && isDigit(value.charAt(i + 2)) && isDigit(value.charAt(i + 3))) {
+                i += 4;
+                digits += 3;
+            }
+            if (i < n && value.charAt(i) != ',') return false;
+        }
+        boolean fraction = i < n && value.charAt(i) == ',';
+        if (fraction) {
+            int fractionStart = ++i;
+            while (i < n && isDigit(value.charAt(i))) i++;
+            if (i == fractionStart) return false;
+            digits += i - fractionStart;
+        }
+        // Dot grouping without a decimal comma is also a dot decimal
+        if (separator == '.' && !fraction) return false;
+        return i == n && digits <= MAX_SIGNIFICANT_DIGITS;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    void date(int column, int year, int month, int day) throws IOException {
+        if (year < 0 || year > 9999) {
+            string(column, LocalDate.of(year, month, day).toString());
+            return;
+        }
+        put(prefixes[column]);
+        put((byte) '"');
+        putDigits(year, 4);
+        put((byte) '-');
+        putDigits(month, 2);
+        put((byte) '-');
+        putDigits(day, 2);
+        put((byte) '"');
+    }
+
+    void endRow() throws IOException {
+        if (prefixes.length == 0) put((byte) '{');
+        put((byte) '}');
+        put((byte) '\n');
+    }
+
+    private void putControl(char c) throws IOException {
+        put((byte) '\\');
+        switch (c) {
+            case '\n': put((byte) 'n'); break;
+            case '\r': put((byte) 'r'); break;
+            case '\t': put((byte) 't'); break;
+            case '\b': put((byte) 'b'); break;
+            case '\f': put((byte) 'f'); break;
+            default:
+                put((byte) 'u');
+                put((byte) '0');
+                put((byte) '0');
+                put(HEX[c >> 4]);
+                put(HEX[c & 0xF]);
+        }
+    }
+
+    private void putLong(long v) throws IOException {
+        if (v < 0) {
+            put((byte) '-');
+            v = -v;
+        }
+        long div = 1;
+        while (div <= v / 10) div *= 10;
+        for (; div > 0; div /= 10) {
+            put((byte) ('0' + (v / div) % 10));
+        }
+    }
+
+    private void putDigits(int v, int width) throws IOException {
+        for (int div = POWERS_OF_TEN[width - 1]; div > 0; div /= 10) {
+            put((byte) ('0' + (v / div) % 10));
+        }
+    }
+
+    private static void appendQuoted(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * pigz-style gzip output: every block handed to write() is deflated independently on the
+ * ForkJoin common pool into a complete gzip member, and the members are written to the
+ * channel in submission order. A file of concatenated members is a valid gzip file (RFC 1952)
+ * that gunzip, zcat and GZIPInputStream read as one stream.
+ *
+ * Blocks are compressed at BEST_SPEED; with one block per core in flight the output keeps up
+ * with the uncompressed writers while writing several times fewer bytes. A bounded window of
+ * blocks is in flight so memory stays at a few blocks per core.
+ */
+final class ParallelGzipWriter {
+
+    private static final byte[] MEMBER_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+
+    private final FileChannel channel;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+    private final ArrayDeque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<>();
+    private long position;
+
+    /**
+     * @param position channel offset the first member is written at
+     */
+    ParallelGzipWriter(FileChannel channel, long position) {
+        this.channel = channel;
+        this.position = position;
+    }
+
+    /**
+     * Copies the remaining bytes of src into a new block and queues it for compression.
+     */
+    void write(ByteBuffer src) throws IOException {
+        if (!src.hasRemaining()) return;
+        byte[] block = new byte[src.remaining()];
+        src.get(block);
+        while (inFlight.size() >= maxInFlight) {
+            writeMember(inFlight.removeFirst());
+        }
+        inFlight.addLast(pool.submit(() -> compress(block)));
+    }
+
+    /**
+     * Writes all queued members. Further blocks may be written afterwards.
+     *
+     * @return the channel offset behind the last member
+     */
+    long finish() throws IOException {
+        while (!inFlight.isEmpty()) {
+            writeMember(inFlight.removeFirst());
+        }
+        return position;
+    }
+
+    /**
+     * Drops the queued blocks, for output that is abandoned.
+     */
+    void cancel() {
+        for (ForkJoinTask<byte[]> t : inFlight) t.cancel(true);
+        inFlight.clear();
+    }
+
+    private void writeMember(ForkJoinTask<byte[]> task) throws IOException {
+        byte[] member;
+        try {
+            member = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+        ByteBuffer src = ByteBuffer.wrap(member);
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    // One complete gzip member: header, raw deflate data, CRC32 and length trailer
+    private static byte[] compress(byte[] block) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(block);
+        deflater.finish();
+
+        byte[] out = new byte[MEMBER_HEADER.length + block.length + block.length / 8 + 64];
+        System.arraycopy(MEMBER_HEADER, 0, out, 0, MEMBER_HEADER.length);
+        int len = MEMBER_HEADER.length;
+        while (!deflater.finished()) {
+            if (len == out.length) out = Arrays.copyOf(out, out.length * 2);
+            len += deflater.deflate(out, len, out.length - len);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(block, 0, block.length);
+        if (out.length - len < 8) out = Arrays.copyOf(out, len + 8);
+        len = putIntLE(out, len, (int) crc.getValue());
+        len = putIntLE(out, len, block.length);
+        return Arrays.copyOf(out, len);
+    }
+
+    private static int putIntLE(byte[] b, int at, int v) {
+        b[at] = (byte) v;
+        b[at + 1] = (byte) (v >>> 8);
+        b[at + 2] = (byte) (v >>> 16);
+        b[at + 3] = (byte) (v >>> 24);
+        return at + 4;
+    }
+}
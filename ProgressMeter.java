@@ -0,0 +1,135 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Tracks how far a conversion has read its input and reports it to a ProgressListener as
+ * XmlParser.Progress snapshots, at most once per interval. The parser feeds it cheap updates
+ * (the input position, one call per row) and the clock is only read every few rows, so the
+ * hot loop does not pay for progress reporting; messages are formatted only when a report is
+ * due.
+ *
+ * Rates and the time left are measured from the start of the current phase. All calls come
+ * from the thread running processFile: the chunked parser hands its results on there, and the
+ * sequential parser reads through count() on that thread.
+ */
+final class ProgressMeter {
+
+    static final long DEFAULT_INTERVAL_MILLIS = 250;
+
+    // Rows between clock reads
+    private static final int ROWS_PER_CHECK = 64;
+
+    private final XmlParser.ProgressListener listener;
+    private final long totalBytes;
+    private final long intervalNanos;
+
+    private XmlParser.Progress.Phase phase;
+    private long phaseStartNanos;
+    private long phaseStartBytes;
+    private long phaseStartRows;
+    private long position;
+    private long rows;
+    private int rowsSinceCheck;
+    private long lastReportNanos;
+
+    /**
+     * @param listener receives the reports, or null to only count
+     */
+    ProgressMeter(XmlParser.ProgressListener listener, long totalBytes, long intervalMillis) {
+        this.listener = listener;
+        this.totalBytes = totalBytes;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    /**
+     * Starts a phase at the given input position and row count, and reports it.
+     */
+    void start(XmlParser.Progress.Phase phase, long position, long rows) {
+        this.phase = phase;
+        this.position = position;
+        this.rows = rows;
+        phaseStartBytes = position;
+        phaseStartRows = rows;
+        phaseStartNanos = System.nanoTime();
+        report(phaseStartNanos);
+    }
+
+    /**
+     * @param position input byte offset everything before which has been read
+     */
+    void position(long position) {
+        this.position = position;
+        check();
+    }
+
+    void row() {
+        rows++;
+        if (++rowsSinceCheck == ROWS_PER_CHECK) {
+            rowsSinceCheck = 0;
+            check();
+        }
+    }
+
+    /**
+     * @return in, counting the bytes read from it as the input position
+     */
+    InputStream count(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) position(position + 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) position(position + n);
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                position(position + skipped);
+                return skipped;
+            }
+        };
+    }
+
+    private void check() {
+        if (listener == null) return;
+        long now = System.nanoTime();
+        if (now - lastReportNanos >= intervalNanos) report(now);
+    }
+
+    private void report(long now) {
+        lastReportNanos = now;
+        if (listener == null) return;
+        double seconds = (now - phaseStartNanos) / 1e9;
+        long bytes = position - phaseStartBytes;
+        double bytesPerSecond = seconds > 0 ? bytes / seconds : 0;
+        // Too early for a steady rate in the first half second
+        long etaMillis = seconds >= 0.5 && bytesPerSecond > 0
+                ? (long) (Math.max(0, totalBytes - position) / bytesPerSecond * 1000) : -1;
+        XmlParser.Progress p = new XmlParser.Progress(phase, position, totalBytes, rows,
+                seconds > 0 ? (rows - phaseStartRows) / seconds : 0, bytesPerSecond / (1024.0 * 1024.0), etaMillis);
+        try {
+            listener.onProgress(p);
+            listener.onProgress(p.toString());
+        } catch (Exception ignored) { }
+    }
+
+    /**
+     * @return "1:05" style duration, hours only when needed
+     */
+    static String formatDuration(long millis) {
+        long s = (millis + 999) / 1000;
+        return s >= 3600
+                ? String.format(Locale.ROOT, "%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60)
+                : String.format(Locale.ROOT, "%d:%02d", s / 60, s % 60);
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streams rejected rows to a CSV sidecar of the output file (SourceFile, Voucher, Transaction,
+ * Reason, RowContext) as they are rejected, for output formats without a Rejected sheet.
+ *
+ * The file is only created once the first row is rejected; a sidecar of an earlier run is
+ * removed when the conversion starts (see clear()). It is capped both in rows and in
+ * bytes, so a badly broken input cannot produce a reject log larger than itself; past the cap
+ * rows are only counted and a final line records how many were left out. Every rejection is
+ * also counted per reason, with the offending value stripped so that one reason per field
+ * remains.
+ */
+final class RejectLog implements Closeable {
+
+    static final int DEFAULT_MAX_ROWS = 100_000;
+
+    private final Path path;
+    private final String sourceFile;
+    private final int maxRows;
+    private final long maxBytes;
+    private final Map<String, Long> reasonCounts = new LinkedHashMap<>();
+
+    private CsvFileWriter writer;
+    private boolean closed;
+    private long logged;
+    private long dropped;
+
+    /**
+     * @param path sidecar file, created on the first rejection
+     * @param sourceFile input file name written into every row
+     * @param maxBytes size the sidecar may reach, typically the input size
+     */
+    RejectLog(Path path, String sourceFile, int maxRows, long maxBytes) {
+        this.path = path;
+        this.sourceFile = sourceFile;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Sidecar path for an output file: report_out.csv -&gt; report_out_rejected.csv, other
+     * formats carry their extension so they do not share it: report_out.jsonl -&gt;
+     * report_out_jsonl_rejected.csv.
+     */
+    static Path pathFor(Path output) {
+        String name = output.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot + 1) : "";
+        if (!extension.isEmpty() && !extension.equalsIgnoreCase("csv")) base += "_" + extension;
+        return output.resolveSibling(base + "_rejected.csv");
+    }
+
+    /**
+     * Continues the sidecar of an interrupted conversion from a checkpoint: the file is cut
+     * back to bytes and the counts are restored. Must be called before the first reject.
+     *
+     * @param bytes sidecar length returned by sync(), 0 if nothing was logged yet
+     */
+    void resume(long bytes, long logged, long dropped, Map<String, Long> reasonCounts) throws IOException {
+        if (bytes > 0) {
+            writer = new CsvFileWriter(path, false, bytes);
+        } else {
+            clear();
+        }
+        this.logged = logged;
+        this.dropped = dropped;
+        this.reasonCounts.putAll(reasonCounts);
+    }
+
+    /**
+     * Removes a sidecar left by an earlier conversion of the same output, so a run without
+     * rejects does not leave the old rows behind. Must be called before the first reject.
+     */
+    void clear() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    void reject(long voucher, int transaction, String reason, String rowContext) throws IOException {
+        int valueAt = reason.indexOf(" (value: ");
+        reasonCounts.merge(valueAt >= 0 ? reason.substring(0, valueAt) : reason, 1L, Long::sum);
+
+        if (logged >= maxRows || (writer != null && writer.size() >= maxBytes)) {
+            dropped++;
+            return;
+        }
+        if (writer == null) {
+            writer = new CsvFileWriter(path, false);
+            writer.writeRow(Arrays.asList("SourceFile", "Voucher", "Transaction", "Reason", "RowContext"));
+        }
+        writer.cell(sourceFile);
+        writer.cell(Long.toString(voucher));
+        writer.cell(Integer.toString(transaction));
+        writer.cell(reason);
+        writer.cell(rowContext);
+        writer.endRow();
+        logged++;
+    }
+
+    long rejectedCount() {
+        return logged + dropped;
+    }
+
+    /**
+     * @return rejected rows counted but not listed because the cap was reached
+     */
+    long droppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Forces the rows logged so far to disk.
+     *
+     * @return the sidecar length to resume from, 0 if nothing was logged yet
+     */
+    long sync() throws IOException {
+        return writer != null ? writer.sync() : 0;
+    }
+
+    /**
+     * @return rejection counts per reason, in the order the reasons first occurred
+     */
+    Map<String, Long> reasonCounts() {
+        return reasonCounts;
+    }
+
+    /**
+     * @return the sidecar path, or null if nothing was rejected
+     */
+    Path writtenPath() {
+        return writer != null ? path : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer == null || closed) return;
+        closed = true;
+        if (dropped > 0) {
+            writer.writeRow(Arrays.asList(sourceFile, "", "",
+                    "Reject log truncated: " + dropped + " more rejected rows not listed", ""));
+        }
+        writer.close();
+    }
+
+    /**
+     * Closes and removes the sidecar, for conversions that are cancelled.
+     */
+    void discard() {
+        try { close(); } catch (IOException ignore) {}
+        try { Files.deleteIfExists(path); } catch (IOException ignore) {}
+    }
+}
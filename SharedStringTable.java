@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deduplicating shared-strings table for DirectXlsxWriter with a fixed memory budget.
+ * Strings are admitted in the order they are first seen until the estimated size of the table
+ * reaches the budget; after that only strings already in the table are shared and new ones
+ * stay inline strings. Ledger columns repeat the same account codes, descriptions and
+ * currencies from the first vouchers on, so those are in the table long before it fills up.
+ * Very long values rarely repeat and are never admitted.
+ */
+final class SharedStringTable {
+
+    // Longest value worth sharing
+    private static final int MAX_SHARED_LENGTH = 256;
+    // Rough heap cost of one entry besides its characters: String, map node, boxed id, list slot
+    private static final int ENTRY_OVERHEAD_BYTES = 100;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final long budgetBytes;
+    private long usedBytes;
+    private long references;
+    private boolean full;
+
+    SharedStringTable(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Counts a reference to the string when it is (or can still be) in the table.
+     *
+     * @return the string's index, or -1 if it has to be written inline
+     */
+    int index(String s) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            if (full || s.length() > MAX_SHARED_LENGTH) return -1;
+            long cost = ENTRY_OVERHEAD_BYTES + 2L * s.length();
+            if (usedBytes + cost > budgetBytes) {
+                full = true;
+                return -1;
+            }
+            usedBytes += cost;
+            id = strings.size();
+            ids.put(s, id);
+            strings.add(s);
+        }
+        references++;
+        return id;
+    }
+
+    int uniqueCount() {
+        return strings.size();
+    }
+
+    boolean isFull() {
+        return full;
+    }
+
+    /**
+     * Writes the xl/sharedStrings.xml part.
+     */
+    void writeTo(Writer w, String namespace) throws IOException {
+        w.write("<sst xmlns=\"" + namespace + "\" count=\"" + references + "\" uniqueCount=\"" + strings.size() + "\">");
+        for (String s : strings) {
+            w.write("<si><t");
+            if (!s.isEmpty() && (s.charAt(0) <= ' ' || s.charAt(s.length() - 1) <= ' ')) {
+                w.write(" xml:space=\"preserve\"");
+            }
+            w.write('>');
+            DirectXlsxWriter.writeEscaped(w, s);
+            w.write("</t></si>");
+        }
+        w.write("</sst>");
+    }
+}
@@ -0,0 +1,61 @@
+import org.apache.poi.ss.usermodel.*;
+
+/**
+ * The fixed set of cell styles of one workbook. Every data cell has a thin border and is a
+ * combination of (stripe, date format), so all of them are created up front and looked up by
+ * index; the number of styles in styles.xml stays the same however many rows are written.
+ */
+final class StyleRegistry {
+
+    private static final String DATE_FORMAT = "dd.MM.yyyy";
+
+    private final CellStyle header;
+    // Indexed by (stripe ? 2 : 0) | (date ? 1 : 0)
+    private final CellStyle[] data = new CellStyle[4];
+
+    StyleRegistry(Workbook wb) {
+        Font dataFont = wb.createFont();
+        dataFont.setColor(IndexedColors.BLACK.getIndex());
+        short dateFormat = wb.createDataFormat().getFormat(DATE_FORMAT);
+        for (int i = 0; i < data.length; i++) {
+            boolean stripe = (i & 2) != 0;
+            CellStyle style = wb.createCellStyle();
+            style.setFillForegroundColor(stripe ? IndexedColors.PALE_BLUE.getIndex() : IndexedColors.WHITE.getIndex());
+            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            style.setAlignment(HorizontalAlignment.CENTER);
+            style.setFont(dataFont);
+            if ((i & 1) != 0) style.setDataFormat(dateFormat);
+            setThinBorder(style);
+            data[i] = style;
+        }
+
+        header = wb.createCellStyle();
+        header.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        header.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        header.setAlignment(HorizontalAlignment.CENTER);
+        Font headerFont = wb.createFont();
+        headerFont.setBold(true);
+        headerFont.setColor(IndexedColors.BLACK.getIndex());
+        header.setFont(headerFont);
+        setThinBorder(header);
+    }
+
+    CellStyle header() {
+        return header;
+    }
+
+    /**
+     * @param stripe true for the pale blue rows (even row indexes)
+     * @param date true to apply the dd.MM.yyyy number format
+     */
+    CellStyle data(boolean stripe, boolean date) {
+        return data[(stripe ? 2 : 0) | (date ? 1 : 0)];
+    }
+
+    private static void setThinBorder(CellStyle style) {
+        style.setBorderTop(BorderStyle.THIN);
+        style.setBorderBottom(BorderStyle.THIN);
+        style.setBorderLeft(BorderStyle.THIN);
+        style.setBorderRight(BorderStyle.THIN);
+    }
+}
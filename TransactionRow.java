@@ -0,0 +1,46 @@
+/**
+ * One output row: the TRANSACTION's own fields plus the fields of its GL_VOUCHER.
+ * Both are slot arrays indexed by ColumnIndex id. The voucher slots are shared by reference
+ * between all transactions of the voucher; transaction values take precedence.
+ * A null slot means the field did not appear in the XML.
+ * The position is the 1-based index of the TRANSACTION within its GL_VOUCHER.
+ */
+final class TransactionRow {
+
+    private final String[] parent;
+    private final String[] own;
+    private final int position;
+
+    TransactionRow(String[] parent, String[] own, int position) {
+        this.parent = parent;
+        this.own = own;
+        this.position = position;
+    }
+
+    int position() {
+        return position;
+    }
+
+    int size() {
+        return own.length;
+    }
+
+    /**
+     * @return the value of the column, or null if the field was not present
+     */
+    String get(int column) {
+        String v = own[column];
+        return v != null ? v : parent[column];
+    }
+
+    String describe(ColumnIndex columns) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < own.length; i++) {
+            String v = get(i);
+            if (v == null) continue;
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(columns.name(i)).append('=').append(v);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base of the text output writers: UTF-8 encoding into a large direct buffer that is written
+ * to a FileChannel with positional writes. Subclasses escape their format's special
+ * characters and hand everything else to putChar, so writing a row allocates nothing.
+ * Unpaired surrogates are written as '?'.
+ *
+ * The file only ever holds bytes that were written, so output cut short by a crash ends at
+ * the last flushed row instead of in padding. With gzip set, every flushed buffer becomes one
+ * gzip member compressed in parallel (see ParallelGzipWriter).
+ *
+ * A writer can continue a file from a length returned by sync(): everything behind it is cut
+ * off and writing resumes there, which for gzip output is a member boundary.
+ */
+abstract class Utf8FileWriter implements Closeable {
+
+    private static final int BUFFER_BYTES = 4 * 1024 * 1024;
+
+    protected final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final FileChannel channel;
+    private final ParallelGzipWriter gzip;
+    private long written;
+    private long flushed;
+    private boolean closed;
+
+    /**
+     * @param gzip true to write gzip-compressed output
+     */
+    Utf8FileWriter(Path out, boolean gzip) throws IOException {
+        this(out, gzip, 0);
+    }
+
+    /**
+     * @param resumeAt file length returned by sync() in an earlier run to continue from, or 0
+     *                 to start a new file
+     */
+    Utf8FileWriter(Path out, boolean gzip, long resumeAt) throws IOException {
+        if (resumeAt > 0) {
+            this.channel = FileChannel.open(out, StandardOpenOption.WRITE);
+            if (channel.size() < resumeAt) {
+                channel.close();
+                throw new IOException(out.getFileName() + " is shorter than its checkpoint");
+            }
+            channel.truncate(resumeAt);
+            this.written = resumeAt;
+            this.flushed = resumeAt; // compressed length for gzip; size() is only an estimate then
+        } else {
+            // A new file rather than the old one truncated: the previous output may be hard
+            // linked into the conversion cache
+            Files.deleteIfExists(out);
+            this.channel = FileChannel.open(out, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        this.gzip = gzip ? new ParallelGzipWriter(channel, resumeAt) : null;
+    }
+
+    final void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) flush();
+        buffer.put(b);
+    }
+
+    final void put(byte[] bytes) throws IOException {
+        if (buffer.remaining() < bytes.length) {
+            flush();
+            if (bytes.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * Encodes value.charAt(i), together with its low surrogate if it starts a pair.
+     *
+     * @return the index of the last char consumed
+     */
+    final int putChar(String value, int i) throws IOException {
+        if (buffer.remaining() < 4) flush();
+        char c = value.charAt(i);
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isSurrogate(c)) {
+            char low = i + 1 < value.length() ? value.charAt(i + 1) : 0;
+            if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                int cp = Character.toCodePoint(c, low);
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+                return i + 1;
+            }
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+        return i;
+    }
+
+    /**
+     * @return uncompressed bytes written so far, including what is still buffered
+     */
+    long size() {
+        return flushed + buffer.position();
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        flushed += buffer.remaining();
+        if (gzip != null) {
+            gzip.write(buffer);
+        } else {
+            writeFully(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes out everything buffered, waits for the compressed blocks and forces the file to
+     * disk, so the rows written so far survive a crash.
+     *
+     * @return the file length holding those rows, to resume from (see the constructor)
+     */
+    long sync() throws IOException {
+        flush();
+        if (gzip != null) written = gzip.finish();
+        channel.force(false);
+        return written;
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            written += channel.write(src, written);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            flush();
+            if (gzip != null) written = gzip.finish();
+            channel.truncate(written);
+        } finally {
+            if (gzip != null) gzip.cancel();
+            channel.close();
+        }
+    }
+}
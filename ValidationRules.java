@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Row validation rules: which fields are required and which field names mark date and amount
+ * columns. The defaults are the rules the converter has always applied; a client-specific set
+ * can be loaded from a properties file:
+ *
+ * <pre>
+ * required.fields=ACCOUNT,AMOUNT,DATE
+ * date.keywords=date,tarih
+ * amount.keywords=amount,tutar,miktar,balance
+ * amount.currency.chars=TL|USD|EUR$€₺
+ * identifier.keywords=account,hesap,code,kod,vno,number,numara
+ * </pre>
+ *
+ * Keywords are matched as lower-case substrings of the field name. An amount value that
+ * contains a letter is treated as text and not checked, unless it also contains one of the
+ * currency characters. Identifier columns (account codes, voucher numbers) are never written
+ * as JSON numbers, even when a value looks like one.
+ *
+ * Rules are compiled against a header set once per conversion (see compile), so the per-row
+ * check only visits the columns that actually have a rule.
+ */
+final class ValidationRules {
+
+    /** System property naming a rules file; overrides DEFAULT_FILE_NAME. */
+    static final String FILE_PROPERTY = "xmlparser.validation";
+
+    /** Rules file picked up from the working directory when present. */
+    static final String DEFAULT_FILE_NAME = "validation.properties";
+
+    private static final ValidationRules DEFAULTS = new ValidationRules(
+            Arrays.asList("ACCOUNT", "AMOUNT", "DATE"),
+            Arrays.asList("date", "tarih"),
+            Arrays.asList("amount", "tutar", "miktar", "balance"),
+            "TL|USD|EUR$€₺",
+            Arrays.asList("account", "hesap", "code", "kod", "vno", "number", "numara"));
+
+    private final List<String> requiredFields;
+    private final List<String> dateKeywords;
+    private final List<String> amountKeywords;
+    private final String currencyChars;
+    private final List<String> identifierKeywords;
+
+    ValidationRules(List<String> requiredFields, List<String> dateKeywords, List<String> amountKeywords,
+                    String currencyChars, List<String> identifierKeywords) {
+        this.requiredFields = new ArrayList<>(requiredFields);
+        this.dateKeywords = new ArrayList<>(dateKeywords);
+        this.amountKeywords = new ArrayList<>(amountKeywords);
+        this.currencyChars = currencyChars;
+        this.identifierKeywords = new ArrayList<>(identifierKeywords);
+    }
+
+    static ValidationRules defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @return the rules from the file named by the FILE_PROPERTY system property, else from
+     *         DEFAULT_FILE_NAME in the working directory, else the built-in defaults
+     */
+    static ValidationRules locate() throws IOException {
+        String configured = System.getProperty(FILE_PROPERTY);
+        if (configured != null && !configured.trim().isEmpty()) {
+            return load(Paths.get(configured.trim()));
+        }
+        Path local = Paths.get(DEFAULT_FILE_NAME);
+        return Files.isRegularFile(local) ? load(local) : DEFAULTS;
+    }
+
+    /**
+     * Reads a UTF-8 rules file. Keys that are missing keep their default value.
+     */
+    static ValidationRules load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(in);
+        }
+        return new ValidationRules(
+                list(props, "required.fields", DEFAULTS.requiredFields),
+                list(props, "date.keywords", DEFAULTS.dateKeywords),
+                list(props, "amount.keywords", DEFAULTS.amountKeywords),
+                props.getProperty("amount.currency.chars", DEFAULTS.currencyChars).trim(),
+                list(props, "identifier.keywords", DEFAULTS.identifierKeywords));
+    }
+
+    private static List<String> list(Properties props, String key, List<String> fallback) {
+        String raw = props.getProperty(key);
+        if (raw == null) return fallback;
+        List<String> out = new ArrayList<>();
+        for (String part : raw.split(",")) {
+            if (!part.trim().isEmpty()) out.add(part.trim());
+        }
+        return out;
+    }
+
+    /**
+     * @return the rules in one line, for telling rule sets apart
+     */
+    String describe() {
+        return "required=" + requiredFields + ";date=" + dateKeywords + ";amount=" + amountKeywords
+                + ";currency=" + currencyChars + ";identifier=" + identifierKeywords;
+    }
+
+    /**
+     * Resolves the rules against a header set: keyword matching and required-field lookups
+     * happen here once instead of for every row.
+     */
+    Plan compile(ColumnIndex columns) {
+        List<Integer> required = new ArrayList<>();
+        List<String> requiredNames = new ArrayList<>();
+        for (String field : requiredFields) {
+            int col = columns.indexOf(field);
+            if (col >= 0) {
+                required.add(col);
+                requiredNames.add(field);
+            }
+        }
+
+        int[] checked = new int[columns.size()];
+        boolean[] isDate = new boolean[columns.size()];
+        boolean[] isAmount = new boolean[columns.size()];
+        boolean[] isIdentifier = new boolean[columns.size()];
+        int checkedCount = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            String key = columns.name(i).toLowerCase();
+            isDate[i] = containsAny(key, dateKeywords);
+            isAmount[i] = containsAny(key, amountKeywords);
+            isIdentifier[i] = containsAny(key, identifierKeywords);
+            if (isDate[i] || isAmount[i]) checked[checkedCount++] = i;
+        }
+
+        int[] requiredCols = new int[required.size()];
+        for (int i = 0; i < requiredCols.length; i++) requiredCols[i] = required.get(i);
+        return new Plan(columns, requiredCols, requiredNames.toArray(new String[0]),
+                Arrays.copyOf(checked, checkedCount), isDate, isAmount, isIdentifier,
+                currencyChars);
+    }
+
+    private static boolean containsAny(String key, List<String> keywords) {
+        for (String k : keywords) {
+            if (key.contains(k)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Rules compiled for one header set. Not thread-safe: it validates with the caller's
+     * parsers, so use it from the thread that writes the rows.
+     */
+    static final class Plan {
+        private final ColumnIndex columns;
+        private final int[] requiredColumns;
+        private final String[] requiredNames;
+        private final int[] checkedColumns;
+        private final boolean[] dateColumn;
+        private final boolean[] amountColumn;
+        private final boolean[] identifierColumn;
+        private final String currencyChars;
+
+        private Plan(ColumnIndex columns, int[] requiredColumns, String[] requiredNames, int[] checkedColumns,
+                     boolean[] dateColumn, boolean[] amountColumn, boolean[] identifierColumn, String currencyChars) {
+            this.columns = columns;
+            this.requiredColumns = requiredColumns;
+            this.requiredNames = requiredNames;
+            this.checkedColumns = checkedColumns;
+            this.dateColumn = dateColumn;
+            this.amountColumn = amountColumn;
+            this.identifierColumn = identifierColumn;
+            this.currencyChars = currencyChars;
+        }
+
+        /**
+         * @return true if the column holds codes or numbers that identify something, whose text
+         *         is kept as it is
+         */
+        boolean isIdentifier(int column) {
+            return identifierColumn[column];
+        }
+
+        /**
+         * @return the rejection reason, or null if the row is valid
+         */
+        String validate(TransactionRow row, FastDateParser dates, FastNumberParser numbers) {
+            int width = row.size();
+            boolean hasAnyData = false;
+            for (int i = 0; i < width; i++) {
+                String value = row.get(i);
+                if (value != null && !isBlank(value)) {
+                    hasAnyData = true;
+                    break;
+                }
+            }
+            if (!hasAnyData) {
+                return "Empty row - no data found";
+            }
+
+            // Only reject a required field if it exists in the XML but is empty
+            for (int r = 0; r < requiredColumns.length; r++) {
+                String value = row.get(requiredColumns[r]);
+                if (value != null && isBlank(value)) {
+                    return "Missing required field: " + requiredNames[r];
+                }
+            }
+
+            for (int col : checkedColumns) {
+                String value = row.get(col);
+                if (value == null || isBlank(value)) continue;
+
+                if (dateColumn[col] && !dates.parse(value)) {
+                    return "Invalid date format in field: " + columns.name(col) + " (value: " + value + ")";
+                }
+                if (amountColumn[col] && !looksLikeText(value)
+                        && !numbers.parse(value) && !value.trim().equals("0")) {
+                    return "Invalid number format in field: " + columns.name(col) + " (value: " + value + ")";
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Text that happens to sit in an amount column: it has an ASCII letter and no currency
+         * character. Same result as the former value.matches(".*[a-zA-Z].*") and
+         * !value.matches(".*[currency].*") pair, including '.' not matching line terminators.
+         */
+        private boolean looksLikeText(String value) {
+            boolean letter = false;
+            boolean currency = false;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return false;
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) letter = true;
+                if (currencyChars.indexOf(c) >= 0) currency = true;
+            }
+            return letter && !currency;
+        }
+
+        private static boolean isBlank(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) > ' ') return false;
+            }
+            return true;
+        }
+    }
+}
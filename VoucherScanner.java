@@ -0,0 +1,467 @@
+import javax.xml.stream.XMLStreamConstants;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Schema-specialized scanner for the flat, machine-generated GL_VOUCHER exports. It walks the
+ * voucher ranges found by VoucherSplitter directly on the mapped bytes and yields the same
+ * element events as StAX would for the constructs it understands: elements, attributes
+ * (skipped), comments, character data and the predefined/numeric entity references.
+ *
+ * Field text is only decoded (UTF-8, entities, line endings) when readElementText is called,
+ * i.e. for values that are actually emitted; the header pass only validates it. Anything else
+ * (CDATA sections, processing instructions, namespaces, malformed UTF-8 or markup) raises
+ * VoucherSplitter.UnsupportedLayoutException so the caller can fall back to StAX, which
+ * also reports genuine errors properly.
+ */
+final class VoucherScanner implements ElementCursor {
+
+    private static final int OTHER_TEXT = 0;
+    private static final int HAS_ENTITY = 1;
+    private static final int HAS_CR = 2;
+    private static final int HAS_NON_ASCII = 4;
+
+    private final ByteBuffer buf;
+    private final long base;
+    private final long[] ranges;
+    private final int rangeCount;
+
+    private int rangeIndex = -1;
+    private int p;
+    private int end;
+
+    private String name;
+    private String[] stack = new String[16];
+    private int depth;
+    private boolean pendingEnd;
+
+    // Reusable scratch space for text segments and decoding
+    private int[] segments = new int[8];
+    private int segmentCount;
+    private int textFlags;
+    private byte[] scratch = new byte[256];
+    private CharBuffer chars = CharBuffer.allocate(256);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    // Element names are interned by their bytes so repeated tags cost no allocation
+    private byte[][] nameKeys = new byte[64][];
+    private String[] nameValues = new String[64];
+    private int nameCount;
+
+    /**
+     * @param buf mapped chunk of the file
+     * @param base file offset of buf's position 0
+     * @param ranges absolute [start, end) voucher ranges, as pairs
+     * @param rangeCount number of ranges
+     */
+    VoucherScanner(ByteBuffer buf, long base, long[] ranges, int rangeCount) {
+        this.buf = buf;
+        this.base = base;
+        this.ranges = ranges;
+        this.rangeCount = rangeCount;
+    }
+
+    @Override
+    public int next() throws VoucherSplitter.UnsupportedLayoutException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            name = stack[--depth];
+            return XMLStreamConstants.END_ELEMENT;
+        }
+        while (true) {
+            if (p >= end) {
+                if (depth != 0) throw unsupported("unbalanced voucher");
+                if (++rangeIndex >= rangeCount) return XMLStreamConstants.END_DOCUMENT;
+                p = (int) (ranges[rangeIndex * 2] - base);
+                end = (int) (ranges[rangeIndex * 2 + 1] - base);
+                continue;
+            }
+            if (buf.get(p) != '<') {
+                p = scanText(p, false);
+                continue;
+            }
+            int event = scanMarkup();
+            if (event != 0) return event;
+        }
+    }
+
+    @Override
+    public String localName() {
+        return name;
+    }
+
+    @Override
+    public String readElementText() throws VoucherSplitter.UnsupportedLayoutException {
+        segmentCount = 0;
+        textFlags = OTHER_TEXT;
+        consumeElement(true);
+        return decodeText();
+    }
+
+    @Override
+    public void skipElement() throws VoucherSplitter.UnsupportedLayoutException {
+        consumeElement(false);
+    }
+
+    // Reads up to the first end tag carrying the current element's name, like the StAX cursor
+    private void consumeElement(boolean collect) throws VoucherSplitter.UnsupportedLayoutException {
+        String target = name;
+        if (pendingEnd) {
+            next();
+            return;
+        }
+        while (true) {
+            if (p >= end) throw unsupported("unterminated element " + target);
+            if (buf.get(p) != '<') {
+                int start = p;
+                p = scanText(p, collect);
+                if (collect) addSegment(start, p);
+                continue;
+            }
+            int event = scanMarkup();
+            if (event == XMLStreamConstants.START_ELEMENT && pendingEnd) {
+                event = next(); // end of the self-closing element
+            }
+            if (event == XMLStreamConstants.END_ELEMENT && name == target) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Scans markup at p ('&lt;'). Returns the event produced, or 0 for skipped markup (comments).
+     */
+    private int scanMarkup() throws VoucherSplitter.UnsupportedLayoutException {
+        int c = byteAt(p + 1);
+        if (c == '!') {
+            if (byteAt(p + 2) == '-' && byteAt(p + 3) == '-') {
+                p = skipComment(p + 4);
+                return 0;
+            }
+            throw unsupported("CDATA section or declaration");
+        }
+        if (c == '?') throw unsupported("processing instruction");
+        if (c == '/') {
+            int nameEnd = scanName(p + 2);
+            String endName = intern(p + 2, nameEnd);
+            int q = skipWhitespace(nameEnd);
+            if (byteAt(q) != '>') throw unsupported("malformed end tag");
+            if (depth == 0 || stack[depth - 1] != endName) throw unsupported("mismatched end tag " + endName);
+            depth--;
+            name = endName;
+            p = q + 1;
+            return XMLStreamConstants.END_ELEMENT;
+        }
+        int nameEnd = scanName(p + 1);
+        name = intern(p + 1, nameEnd);
+        push(name);
+        p = scanAttributes(nameEnd);
+        return XMLStreamConstants.START_ELEMENT;
+    }
+
+    private int scanAttributes(int q) throws VoucherSplitter.UnsupportedLayoutException {
+        while (true) {
+            boolean sawSpace = q != skipWhitespace(q);
+            q = skipWhitespace(q);
+            int b = byteAt(q);
+            if (b == '>') return q + 1;
+            if (b == '/') {
+                if (byteAt(q + 1) != '>') throw unsupported("malformed tag");
+                pendingEnd = true;
+                return q + 2;
+            }
+            if (!sawSpace) throw unsupported("malformed tag");
+            int attrEnd = scanName(q);
+            if (attrEnd - q == 5 && matches(q, "xmlns")) throw unsupported("namespace declaration");
+            q = skipWhitespace(attrEnd);
+            if (byteAt(q) != '=') throw unsupported("malformed attribute");
+            q = skipWhitespace(q + 1);
+            int quote = byteAt(q);
+            if (quote != '"' && quote != '\'') throw unsupported("unquoted attribute");
+            q++;
+            while (true) {
+                b = byteAt(q);
+                if (b == quote) break;
+                if (b < 0 || b == '<') throw unsupported("malformed attribute value");
+                if (b == '&') {
+                    q = checkEntity(q);
+                } else if (b >= 0x80) {
+                    q = checkUtf8(q);
+                } else {
+                    if (b < 0x20 && b != '\t' && b != '\n' && b != '\r') throw unsupported("control character");
+                    q++;
+                }
+            }
+            q++;
+        }
+    }
+
+    // Validates character data up to the next '<'; records what decoding it will need
+    private int scanText(int q, boolean collect) throws VoucherSplitter.UnsupportedLayoutException {
+        while (q < end) {
+            int b = buf.get(q);
+            if (b == '<') break;
+            if (b >= 0x20 && b != '&' && b != ']') {
+                q++;
+            } else if (b < 0) {
+                q = checkUtf8(q);
+                if (collect) textFlags |= HAS_NON_ASCII;
+            } else if (b == '&') {
+                q = checkEntity(q);
+                if (collect) textFlags |= HAS_ENTITY;
+            } else if (b == ']') {
+                if (byteAt(q + 1) == ']' && byteAt(q + 2) == '>') throw unsupported("']]>' in content");
+                q++;
+            } else if (b == '\r') {
+                if (collect) textFlags |= HAS_CR;
+                q++;
+            } else if (b == '\t' || b == '\n') {
+                q++;
+            } else {
+                throw unsupported("control character");
+            }
+        }
+        return q;
+    }
+
+    private int skipComment(int q) throws VoucherSplitter.UnsupportedLayoutException {
+        for (; q + 2 < end; q++) {
+            if (buf.get(q) == '-' && buf.get(q + 1) == '-') {
+                if (buf.get(q + 2) != '>') throw unsupported("'--' inside comment");
+                return q + 3;
+            }
+        }
+        throw unsupported("unterminated comment");
+    }
+
+    private int scanName(int q) throws VoucherSplitter.UnsupportedLayoutException {
+        int start = q;
+        while (q < end) {
+            int b = buf.get(q);
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_'
+                    || (q > start && ((b >= '0' && b <= '9') || b == '-' || b == '.'))) {
+                q++;
+            } else if (b < 0) {
+                q = checkUtf8(q);
+            } else if (b == ':') {
+                throw unsupported("namespace prefix");
+            } else {
+                break;
+            }
+        }
+        if (q == start) throw unsupported("malformed name");
+        return q;
+    }
+
+    // Accepts &amp; &lt; &gt; &quot; &apos; and valid character references
+    private int checkEntity(int q) throws VoucherSplitter.UnsupportedLayoutException {
+        int semi = q + 1;
+        while (semi < end && semi - q <= 12 && buf.get(semi) != ';') semi++;
+        if (semi >= end || buf.get(semi) != ';') throw unsupported("malformed entity reference");
+        if (entityCodePoint(q + 1, semi) < 0) throw unsupported("unknown entity reference");
+        return semi + 1;
+    }
+
+    private int entityCodePoint(int start, int semi) {
+        int len = semi - start;
+        if (len >= 2 && buf.get(start) == '#') {
+            int radix = 10;
+            int q = start + 1;
+            if (buf.get(q) == 'x') {
+                radix = 16;
+                q++;
+            }
+            if (q == semi) return -1;
+            int cp = 0;
+            for (; q < semi; q++) {
+                int d = Character.digit(buf.get(q), radix);
+                if (d < 0 || cp > 0x10FFFF) return -1;
+                cp = cp * radix + d;
+            }
+            boolean legal = cp == 0x9 || cp == 0xA || cp == 0xD || (cp >= 0x20 && cp <= 0xD7FF)
+                    || (cp >= 0xE000 && cp <= 0xFFFD) || (cp >= 0x10000 && cp <= 0x10FFFF);
+            return legal ? cp : -1;
+        }
+        if (len == 3 && matches(start, "amp")) return '&';
+        if (len == 2 && matches(start, "lt")) return '<';
+        if (len == 2 && matches(start, "gt")) return '>';
+        if (len == 4 && matches(start, "quot")) return '"';
+        if (len == 4 && matches(start, "apos")) return '\'';
+        return -1;
+    }
+
+    // Validates one UTF-8 sequence starting at q and returns the offset behind it
+    private int checkUtf8(int q) throws VoucherSplitter.UnsupportedLayoutException {
+        int b0 = buf.get(q) & 0xFF;
+        int n;
+        int min;
+        int cp;
+        if (b0 >= 0xC2 && b0 <= 0xDF) { n = 1; min = 0x80; cp = b0 & 0x1F; }
+        else if (b0 >= 0xE0 && b0 <= 0xEF) { n = 2; min = 0x800; cp = b0 & 0x0F; }
+        else if (b0 >= 0xF0 && b0 <= 0xF4) { n = 3; min = 0x10000; cp = b0 & 0x07; }
+        else throw unsupported("malformed UTF-8");
+        if (q + n >= end) throw unsupported("malformed UTF-8");
+        for (int i = 1; i <= n; i++) {
+            int b = buf.get(q + i) & 0xFF;
+            if ((b & 0xC0) != 0x80) throw unsupported("malformed UTF-8");
+            cp = (cp << 6) | (b & 0x3F);
+        }
+        if (cp < min || cp > 0x10FFFF || (cp >= 0xD800 && cp <= 0xDFFF) || cp == 0xFFFE || cp == 0xFFFF) {
+            throw unsupported("malformed UTF-8");
+        }
+        return q + n + 1;
+    }
+
+    private void addSegment(int start, int stop) {
+        if (start == stop) return;
+        if (segmentCount * 2 == segments.length) segments = Arrays.copyOf(segments, segments.length * 2);
+        segments[segmentCount * 2] = start;
+        segments[segmentCount * 2 + 1] = stop;
+        segmentCount++;
+    }
+
+    private String decodeText() throws VoucherSplitter.UnsupportedLayoutException {
+        if (segmentCount == 0) return "";
+        if (segmentCount == 1 && textFlags == OTHER_TEXT) {
+            // Plain ASCII without entities: trim on the bytes and copy once
+            int s = segments[0];
+            int e = segments[1];
+            while (s < e && buf.get(s) <= ' ') s++;
+            while (e > s && buf.get(e - 1) <= ' ') e--;
+            if (s == e) return "";
+            byte[] bytes = scratchFor(e - s);
+            for (int i = s; i < e; i++) bytes[i - s] = buf.get(i);
+            return new String(bytes, 0, e - s, StandardCharsets.ISO_8859_1);
+        }
+
+        int total = 0;
+        for (int i = 0; i < segmentCount; i++) total += segments[i * 2 + 1] - segments[i * 2];
+        byte[] out = scratchFor(total);
+        int n = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            int q = segments[i * 2];
+            int stop = segments[i * 2 + 1];
+            while (q < stop) {
+                byte b = buf.get(q);
+                if (b == '&') {
+                    int semi = q + 1;
+                    while (buf.get(semi) != ';') semi++;
+                    n = appendUtf8(out, n, entityCodePoint(q + 1, semi));
+                    q = semi + 1;
+                } else if (b == '\r') {
+                    // XML line-end normalization: CRLF and lone CR become LF
+                    out[n++] = '\n';
+                    q++;
+                    if (q < stop && buf.get(q) == '\n') q++;
+                } else {
+                    out[n++] = b;
+                    q++;
+                }
+            }
+        }
+        if (chars.capacity() < n) chars = CharBuffer.allocate(Math.max(n, chars.capacity() * 2));
+        chars.clear();
+        decoder.reset();
+        try {
+            decoder.decode(ByteBuffer.wrap(out, 0, n), chars, true);
+        } catch (IllegalStateException e) {
+            throw unsupported("malformed UTF-8");
+        }
+        if (decoder.flush(chars).isError()) throw unsupported("malformed UTF-8");
+        chars.flip();
+        int s = chars.position();
+        int e = chars.limit();
+        while (s < e && chars.get(s) <= ' ') s++;
+        while (e > s && chars.get(e - 1) <= ' ') e--;
+        return new String(chars.array(), s, e - s);
+    }
+
+    // Entity expansion never makes text longer than its source bytes
+    private static int appendUtf8(byte[] out, int n, int cp) {
+        if (cp < 0x80) {
+            out[n++] = (byte) cp;
+        } else if (cp < 0x800) {
+            out[n++] = (byte) (0xC0 | (cp >> 6));
+            out[n++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            out[n++] = (byte) (0xE0 | (cp >> 12));
+            out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            out[n++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            out[n++] = (byte) (0xF0 | (cp >> 18));
+            out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            out[n++] = (byte) (0x80 | (cp & 0x3F));
+        }
+        return n;
+    }
+
+    private String intern(int start, int stop) throws VoucherSplitter.UnsupportedLayoutException {
+        int len = stop - start;
+        for (int i = 0; i < nameCount; i++) {
+            byte[] key = nameKeys[i];
+            if (key.length != len) continue;
+            int j = 0;
+            while (j < len && key[j] == buf.get(start + j)) j++;
+            if (j == len) return nameValues[i];
+        }
+        byte[] key = new byte[len];
+        for (int j = 0; j < len; j++) key[j] = buf.get(start + j);
+        String value;
+        try {
+            value = decoder.reset().decode(ByteBuffer.wrap(key)).toString().intern();
+        } catch (CharacterCodingException e) {
+            throw unsupported("malformed UTF-8 in name");
+        }
+        if (nameCount == nameKeys.length) {
+            nameKeys = Arrays.copyOf(nameKeys, nameCount * 2);
+            nameValues = Arrays.copyOf(nameValues, nameCount * 2);
+        }
+        nameKeys[nameCount] = key;
+        nameValues[nameCount] = value;
+        nameCount++;
+        return value;
+    }
+
+    private void push(String element) {
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = element;
+    }
+
+    private byte[] scratchFor(int len) {
+        if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+        return scratch;
+    }
+
+    private int skipWhitespace(int q) {
+        while (q < end) {
+            int b = buf.get(q);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') break;
+            q++;
+        }
+        return q;
+    }
+
+    private boolean matches(int q, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (byteAt(q + i) != ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int byteAt(int q) {
+        return q < end ? buf.get(q) & 0xFF : -1;
+    }
+
+    private VoucherSplitter.UnsupportedLayoutException unsupported(String what) {
+        return new VoucherSplitter.UnsupportedLayoutException("Fast scan not possible: " + what
+                + " near byte " + (base + p));
+    }
+}
@@ -0,0 +1,400 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds GL_VOUCHER element boundaries with a plain byte scan over a memory-mapped file so
+ * vouchers can be parsed independently of each other.
+ *
+ * Only ASCII-compatible encodings are handled. Inputs the scan cannot split safely
+ * (a DOCTYPE that may declare entities, namespace-prefixed or nested GL_VOUCHER tags,
+ * unterminated markup) raise UnsupportedLayoutException so callers can fall back to a
+ * sequential parse.
+ *
+ * The vouchers themselves are checked by their parsers; the scan checks the markup around
+ * them, so a document the sequential parser rejects is not split either: tags outside
+ * vouchers must nest and match, there must be exactly one root element that is closed at the
+ * end, and before and after it only whitespace, comments and processing instructions may
+ * appear. Every voucher must sit in the same chain of parent elements (see voucherParents), so
+ * a scan can continue from a voucher boundary knowing which elements are open there. Anything
+ * else raises UnsupportedLayoutException as well, and the sequential parser then reports the
+ * error as it would without the scan.
+ */
+final class VoucherSplitter implements Closeable {
+
+    static final class UnsupportedLayoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedLayoutException(String message) {
+            super(message);
+        }
+    }
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final byte[] VOUCHER_TAG = "GL_VOUCHER".getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final long size;
+    private final String encoding;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowLength;
+
+    private long pos;
+
+    // Elements open outside vouchers, innermost first, and whether the root was opened/closed
+    private final ArrayDeque<String> open = new ArrayDeque<>();
+    private int openChanges;
+    private int checkedChanges = -1;
+    private boolean rootSeen;
+    private boolean rootClosed;
+    private List<String> voucherParents;
+    // Start of the text outside vouchers that is not checked yet
+    private long textStart;
+
+    /**
+     * @param channel input file, read-only
+     * @param startOffset byte offset to start looking for vouchers: 0 for the whole file, or
+     *                    the end of a voucher found by an earlier scan
+     * @param parents the earlier scan's voucherParents when startOffset is not 0
+     */
+    VoucherSplitter(FileChannel channel, long startOffset, List<String> parents) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.encoding = detectEncoding();
+        this.pos = Math.max(startOffset, 0);
+        this.textStart = pos;
+        if (pos > 0) {
+            if (parents == null) throw new UnsupportedLayoutException("Elements open at byte " + pos + " are unknown");
+            for (String name : parents) open.push(name);
+            voucherParents = new ArrayList<>(parents);
+            rootSeen = true;
+            rootClosed = parents.isEmpty();
+        }
+    }
+
+    /**
+     * @return encoding declared by the document, used for the per-voucher readers
+     */
+    String encoding() {
+        return encoding;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return byte offset just behind the last voucher returned by next()
+     */
+    long position() {
+        return pos;
+    }
+
+    /**
+     * @return names of the elements enclosing every voucher, outermost first, or null if no
+     *         voucher was found
+     */
+    List<String> voucherParents() {
+        return voucherParents;
+    }
+
+    /**
+     * Advances to the next GL_VOUCHER element.
+     *
+     * @param range receives [start of "&lt;GL_VOUCHER", end of "&lt;/GL_VOUCHER&gt;" exclusive)
+     * @return false when there are no more vouchers
+     */
+    boolean next(long[] range) throws IOException {
+        long p = pos;
+        long voucherStart = -1;
+        while (true) {
+            p = indexOf('<', p);
+            if (p < 0) {
+                if (voucherStart >= 0) throw new UnsupportedLayoutException("Unterminated GL_VOUCHER at byte " + voucherStart);
+                checkText(textStart, size);
+                if (!open.isEmpty()) throw new UnsupportedLayoutException("Document ends inside <" + open.peek() + ">");
+                if (!rootSeen) throw new UnsupportedLayoutException("No root element");
+                pos = size;
+                textStart = size;
+                return false;
+            }
+            boolean outside = voucherStart < 0;
+            if (outside) checkText(textStart, p);
+            int c = byteAt(p + 1);
+            if (c == '!') {
+                if (matches(p + 2, "--")) {
+                    p = skipPast(p + 4, "-->");
+                } else if (matches(p + 2, "[CDATA[")) {
+                    if (outside && open.isEmpty()) throw new UnsupportedLayoutException("CDATA outside the root element at byte " + p);
+                    p = skipPast(p + 9, "]]>");
+                } else {
+                    throw new UnsupportedLayoutException("DOCTYPE/markup declaration at byte " + p);
+                }
+                if (outside) textStart = p;
+                continue;
+            }
+            if (c == '?') {
+                p = skipPast(p + 2, "?>");
+                if (outside) textStart = p;
+                continue;
+            }
+
+            boolean endTag = (c == '/');
+            long nameStart = endTag ? p + 2 : p + 1;
+            long nameEnd = nameStart;
+            long localStart = nameStart;
+            int b;
+            while ((b = byteAt(nameEnd)) >= 0 && !isNameTerminator(b)) {
+                if (b == ':') localStart = nameEnd + 1;
+                nameEnd++;
+            }
+
+            if (isVoucherName(localStart, nameEnd)) {
+                if (localStart != nameStart) {
+                    throw new UnsupportedLayoutException("Namespace-prefixed GL_VOUCHER at byte " + p);
+                }
+                if (!endTag) {
+                    if (voucherStart >= 0) throw new UnsupportedLayoutException("Nested GL_VOUCHER at byte " + p);
+                    openElement(p);
+                    checkParents(p);
+                    long tagEnd = findTagEnd(nameEnd);
+                    if (byteAt(tagEnd - 1) == '/') {
+                        range[0] = p;
+                        range[1] = tagEnd + 1;
+                        return voucherEnd(tagEnd + 1);
+                    }
+                    voucherStart = p;
+                    p = tagEnd + 1;
+                } else {
+                    if (voucherStart < 0) throw new UnsupportedLayoutException("Unmatched </GL_VOUCHER> at byte " + p);
+                    long tagEnd = findTagEnd(nameEnd);
+                    range[0] = voucherStart;
+                    range[1] = tagEnd + 1;
+                    return voucherEnd(tagEnd + 1);
+                }
+            } else if (outside) {
+                // An element around or between the vouchers
+                String name = new String(bytes(nameStart, nameEnd), StandardCharsets.ISO_8859_1);
+                if (name.isEmpty()) throw new UnsupportedLayoutException("Malformed tag at byte " + p);
+                long tagEnd = findTagEnd(nameEnd);
+                if (endTag) {
+                    if (!name.equals(open.peek())) {
+                        throw new UnsupportedLayoutException("Unmatched </" + name + "> at byte " + p);
+                    }
+                    open.pop();
+                    openChanges++;
+                    if (open.isEmpty()) rootClosed = true;
+                } else {
+                    openElement(p);
+                    if (byteAt(tagEnd - 1) == '/') {
+                        if (open.isEmpty()) rootClosed = true;
+                    } else {
+                        open.push(name);
+                        openChanges++;
+                    }
+                }
+                p = tagEnd + 1;
+                textStart = p;
+            } else {
+                p = nameEnd;
+            }
+        }
+    }
+
+    private boolean voucherEnd(long end) {
+        pos = end;
+        textStart = end;
+        if (open.isEmpty()) rootClosed = true;
+        return true;
+    }
+
+    // A start tag outside vouchers: only one root element is allowed
+    private void openElement(long p) throws IOException {
+        if (!open.isEmpty()) return;
+        if (rootClosed) throw new UnsupportedLayoutException("Content after the root element at byte " + p);
+        rootSeen = true;
+    }
+
+    private void checkParents(long p) throws IOException {
+        if (checkedChanges == openChanges) return;
+        checkedChanges = openChanges;
+        List<String> parents = new ArrayList<>(open.size());
+        for (Iterator<String> it = open.descendingIterator(); it.hasNext(); ) parents.add(it.next());
+        if (voucherParents == null) {
+            voucherParents = parents;
+        } else if (!voucherParents.equals(parents)) {
+            throw new UnsupportedLayoutException("GL_VOUCHER at byte " + p + " is inside " + parents
+                    + ", earlier ones inside " + voucherParents);
+        }
+    }
+
+    /**
+     * Text outside vouchers: only whitespace outside the root element (a byte order mark at
+     * the start aside), and within it no ']]&gt;' and only references the sequential parser
+     * resolves without a DTD.
+     */
+    private void checkText(long from, long to) throws IOException {
+        if (from == 0 && byteAt(0) == 0xEF && byteAt(1) == 0xBB && byteAt(2) == 0xBF) from = 3;
+        boolean inRoot = !open.isEmpty();
+        for (long p = from; p < to; p++) {
+            int b = byteAt(p);
+            if (!inRoot) {
+                if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                    throw new UnsupportedLayoutException("Text outside the root element at byte " + p);
+                }
+            } else if (b == '&') {
+                long semicolon = p + 1;
+                while (semicolon < to && semicolon - p <= 10 && byteAt(semicolon) != ';') semicolon++;
+                if (semicolon >= to || !isKnownReference(p + 1, semicolon)) {
+                    throw new UnsupportedLayoutException("Unresolvable reference at byte " + p);
+                }
+                p = semicolon;
+            } else if (b == ']' && matches(p, "]]>")) {
+                throw new UnsupportedLayoutException("']]>' in text at byte " + p);
+            }
+        }
+    }
+
+    private boolean isKnownReference(long start, long end) {
+        String ref = new String(bytes(start, end), StandardCharsets.ISO_8859_1);
+        if (ref.equals("amp") || ref.equals("lt") || ref.equals("gt") || ref.equals("quot") || ref.equals("apos")) {
+            return true;
+        }
+        return ref.matches("#[0-9]+|#x[0-9a-fA-F]+");
+    }
+
+    private byte[] bytes(long start, long end) {
+        byte[] b = new byte[(int) (end - start)];
+        for (int i = 0; i < b.length; i++) b[i] = (byte) byteAt(start + i);
+        return b;
+    }
+
+    /**
+     * Maps the given byte range. Ranges must not exceed 2 GB (a single voucher or a batch of them).
+     */
+    MappedByteBuffer map(long start, long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    @Override
+    public void close() {
+        window = null;
+    }
+
+    private String detectEncoding() throws IOException {
+        int b0 = byteAt(0), b1 = byteAt(1);
+        if ((b0 == 0xFE && b1 == 0xFF) || (b0 == 0xFF && b1 == 0xFE) || b0 == 0 || b1 == 0) {
+            throw new UnsupportedLayoutException("UTF-16/UTF-32 input");
+        }
+        long start = (b0 == 0xEF && b1 == 0xBB && byteAt(2) == 0xBF) ? 3 : 0;
+        if (!matches(start, "<?xml")) return "UTF-8";
+
+        StringBuilder decl = new StringBuilder();
+        for (long p = start; p < size && p < start + 512; p++) {
+            int b = byteAt(p);
+            decl.append((char) b);
+            if (b == '>') break;
+        }
+        String s = decl.toString();
+        int idx = s.indexOf("encoding");
+        if (idx < 0) return "UTF-8";
+        int q = idx + "encoding".length();
+        while (q < s.length() && s.charAt(q) != '"' && s.charAt(q) != '\'') q++;
+        if (q >= s.length()) return "UTF-8";
+        int qEnd = s.indexOf(s.charAt(q), q + 1);
+        if (qEnd < 0) return "UTF-8";
+        String enc = s.substring(q + 1, qEnd).trim();
+        String upper = enc.toUpperCase(Locale.ROOT);
+        if (upper.equals("UTF-8") || upper.equals("UTF8") || upper.equals("US-ASCII") || upper.equals("ASCII")
+                || upper.startsWith("ISO-8859-") || upper.startsWith("WINDOWS-125") || upper.startsWith("CP125")) {
+            return enc;
+        }
+        throw new UnsupportedLayoutException("Encoding not supported by the voucher scan: " + enc);
+    }
+
+    private boolean isVoucherName(long start, long end) {
+        if (end - start != VOUCHER_TAG.length) return false;
+        for (int i = 0; i < VOUCHER_TAG.length; i++) {
+            int b = byteAt(start + i);
+            if (b >= 'a' && b <= 'z') b -= 32;
+            if (b != VOUCHER_TAG[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isNameTerminator(int b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    // Returns the offset of the '>' closing the tag, honouring quoted attribute values
+    private long findTagEnd(long p) throws IOException {
+        int quote = 0;
+        for (int b; (b = byteAt(p)) >= 0; p++) {
+            if (quote != 0) {
+                if (b == quote) quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return p;
+            }
+        }
+        throw new UnsupportedLayoutException("Unterminated tag");
+    }
+
+    private long skipPast(long p, String terminator) throws IOException {
+        for (; p < size; p++) {
+            if (byteAt(p) == terminator.charAt(0) && matches(p, terminator)) {
+                return p + terminator.length();
+            }
+        }
+        throw new UnsupportedLayoutException("Unterminated '" + terminator + "' section");
+    }
+
+    private boolean matches(long p, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (byteAt(p + i) != ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Tight loop over the mapped window; this is where the scan spends nearly all its time
+    private long indexOf(int value, long p) {
+        byte target = (byte) value;
+        while (p >= 0 && p < size) {
+            if (p < windowStart || p >= windowStart + windowLength) remap(p);
+            MappedByteBuffer w = window;
+            int limit = windowLength;
+            for (int i = (int) (p - windowStart); i < limit; i++) {
+                if (w.get(i) == target) return windowStart + i;
+            }
+            p = windowStart + limit;
+        }
+        return -1;
+    }
+
+    private int byteAt(long p) {
+        if (p < windowStart || p >= windowStart + windowLength) {
+            if (p < 0 || p >= size) return -1;
+            remap(p);
+        }
+        return window.get((int) (p - windowStart)) & 0xFF;
+    }
+
+    private void remap(long p) {
+        try {
+            windowStart = p;
+            windowLength = (int) Math.min(WINDOW_SIZE, size - p);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
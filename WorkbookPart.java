@@ -0,0 +1,259 @@
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One xlsx output file with its Data and Rejected sheets, written through an SXSSF workbook or
+ * a DirectXlsxWriter. A sheet holds at most rowsPerSheet rows below its header; further rows
+ * continue on Data_2, Data_3, ... (Rejected_2, ... for rejected rows), so exports past
+ * Excel's 1,048,576-row limit are neither cut off nor refused when the file is opened.
+ *
+ * The workbook is written to a temp file and moved into place by finish(). A part has its
+ * own number and date parsers, column types and widths, so the parts of a split export can be
+ * written on separate threads (see WorkbookSplitter).
+ */
+final class WorkbookPart implements Closeable {
+
+    // Data rows that fit on one worksheet below the header row
+    static final int MAX_ROWS_PER_SHEET = 1_048_575;
+
+    private final Path out;
+    private final Path tmp;
+    private final String sourceFile;
+    private final int rowsPerSheet;
+    private final int columnCount;
+    private final FastNumberParser numberParser = new FastNumberParser();
+    private final FastDateParser dateParser = new FastDateParser();
+    private final ColumnTypes types;
+    private final ColumnWidths widths;
+
+    // Exactly one of wb (with its styles and sheets) and direct is set
+    private final SXSSFWorkbook wb;
+    private final StyleRegistry styles;
+    private final List<Sheet> dataSheets = new ArrayList<>();
+    private final List<String> headers;
+    private Sheet sheet;
+    private Sheet rejectedSheet;
+    private int rejectedSheets = 1;
+    private final DirectXlsxWriter direct;
+
+    // Row indexes within the current sheets; row 0 is the header
+    private int dataRowIdx = 1;
+    private int rejRowIdx = 1;
+
+    /**
+     * @param sourceFile input file name written into every rejected row
+     * @param rowsPerSheet data rows per sheet, at most MAX_ROWS_PER_SHEET
+     * @param directXlsx true to write with DirectXlsxWriter instead of SXSSF
+     * @param sharedStrings table for Data sheet text (DirectXlsxWriter only), or null
+     */
+    WorkbookPart(Path out, List<String> headers, String sourceFile, int rowsPerSheet, boolean directXlsx,
+                 SharedStringTable sharedStrings) throws IOException {
+        this.out = out;
+        this.tmp = tempPathFor(out);
+        this.headers = headers;
+        this.sourceFile = sourceFile;
+        this.rowsPerSheet = Math.max(1, Math.min(rowsPerSheet, MAX_ROWS_PER_SHEET));
+        this.columnCount = headers.size();
+        this.types = new ColumnTypes(columnCount);
+        this.widths = new ColumnWidths(headers);
+
+        if (directXlsx) {
+            this.wb = null;
+            this.styles = null;
+            this.direct = new DirectXlsxWriter(tmp, headers, widths, sharedStrings);
+        } else {
+            this.direct = null;
+            this.wb = new SXSSFWorkbook(100);
+            this.styles = new StyleRegistry(wb);
+            this.sheet = wb.createSheet("Data");
+            this.rejectedSheet = wb.createSheet("Rejected");
+            dataSheets.add(sheet);
+            createHeaderRow(sheet);
+            createRejectedHeader(rejectedSheet);
+        }
+    }
+
+    /**
+     * Temp file a workbook is written to before it is moved to outPath.
+     */
+    static Path tempPathFor(Path outPath) {
+        Path parent = outPath.getParent();
+        if (parent == null) parent = Paths.get(".");
+        return parent.resolve(outPath.getFileName().toString() + ".tmp");
+    }
+
+    void row(TransactionRow rowData) throws IOException {
+        if (dataRowIdx > rowsPerSheet) {
+            nextDataSheet();
+        }
+        if (direct != null) {
+            writeDirectRow(rowData, dataRowIdx);
+        } else {
+            writeDataRow(rowData, dataRowIdx);
+        }
+        dataRowIdx++;
+    }
+
+    void rejected(String rowContext, String reason) throws IOException {
+        if (rejRowIdx > rowsPerSheet) {
+            rejectedSheets++;
+            rejRowIdx = 1;
+            if (direct != null) {
+                direct.nextRejectedSheet();
+            } else {
+                rejectedSheet = wb.createSheet(DirectXlsxWriter.sheetName("Rejected", rejectedSheets));
+                createRejectedHeader(rejectedSheet);
+            }
+        }
+        if (direct != null) {
+            direct.rejected(sourceFile, rowContext, reason);
+        } else {
+            Row r = rejectedSheet.createRow(rejRowIdx);
+            r.createCell(0).setCellValue(sourceFile);
+            r.createCell(1).setCellValue(rowContext);
+            r.createCell(2).setCellValue(reason);
+        }
+        rejRowIdx++;
+    }
+
+    /**
+     * Completes the workbook and moves it to its path.
+     */
+    void finish() throws IOException {
+        ConversionMetrics metrics = ConversionMetrics.shared();
+        long start = System.nanoTime();
+        if (direct != null) {
+            direct.finish();
+        } else {
+            for (Sheet s : dataSheets) widths.apply(s);
+            long sized = System.nanoTime();
+            metrics.add(ConversionMetrics.Phase.AUTOSIZE, sized - start);
+            start = sized;
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                wb.write(os);
+                os.flush();
+            }
+        }
+        long written = System.nanoTime();
+        metrics.add(ConversionMetrics.Phase.FLUSH, written - start);
+        // Move atomically (will fail if filesystem doesn't support ATOMIC_MOVE)
+        Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        metrics.add(ConversionMetrics.Phase.MOVE, System.nanoTime() - written);
+    }
+
+    /**
+     * Releases the writer and its temp files; a workbook that was not finished is discarded.
+     */
+    @Override
+    public void close() {
+        if (direct != null) {
+            try { direct.close(); } catch (Exception ignore) {}
+        }
+        // Dispose SXSSF temporary files
+        if (wb != null) {
+            try { wb.dispose(); } catch (Exception ignore) {}
+        }
+        try { Files.deleteIfExists(tmp); } catch (Exception ignore) {}
+    }
+
+    // Data sheets stay in front of the Rejected sheets
+    private void nextDataSheet() throws IOException {
+        dataRowIdx = 1;
+        if (direct != null) {
+            direct.nextDataSheet();
+            return;
+        }
+        String name = DirectXlsxWriter.sheetName("Data", dataSheets.size() + 1);
+        sheet = wb.createSheet(name);
+        wb.setSheetOrder(name, dataSheets.size());
+        dataSheets.add(sheet);
+        createHeaderRow(sheet);
+    }
+
+    private void createHeaderRow(Sheet sheet) {
+        Row headerRow = sheet.createRow(0);
+        CellStyle headerStyle = styles.header();
+
+        for (int i = 0; i < headers.size(); i++) {
+            Cell c = headerRow.createCell(i);
+            c.setCellValue(headers.get(i));
+            c.setCellStyle(headerStyle);
+            sheet.setColumnWidth(i, 20 * 256);
+        }
+    }
+
+    private void createRejectedHeader(Sheet rejectedSheet) {
+        Row rejHeader = rejectedSheet.createRow(0);
+        rejHeader.createCell(0).setCellValue("SourceFile");
+        rejHeader.createCell(1).setCellValue("RowContext");
+        rejHeader.createCell(2).setCellValue("Reason");
+    }
+
+    private void writeDataRow(TransactionRow rowData, int rowIdx) {
+        Row row = sheet.createRow(rowIdx);
+        boolean isBlue = (rowIdx % 2 == 0);
+
+        for (int i = 0; i < columnCount; i++) {
+            String value = rowData.get(i);
+            if (value == null) value = "";
+            Cell cell = row.createCell(i);
+            ColumnTypes.Type written = writeCellValue(cell, value, types.get(i));
+            if (!value.isEmpty()) {
+                types.record(i, written);
+                widths.record(i, value.length());
+            }
+            cell.setCellStyle(styles.data(isBlue, written == ColumnTypes.Type.DATE));
+        }
+    }
+
+    private void writeDirectRow(TransactionRow rowData, int rowIdx) throws IOException {
+        boolean isBlue = (rowIdx % 2 == 0);
+        direct.startRow(rowIdx);
+        for (int i = 0; i < columnCount; i++) {
+            String value = rowData.get(i);
+            if (value == null) value = "";
+            ColumnTypes.Type written = ColumnTypes.classify(value, types.get(i), dateParser, numberParser);
+            switch (written) {
+                case DATE:
+                    direct.number(i, dateParser.excelSerial(), DirectXlsxWriter.dataStyle(isBlue, true));
+                    break;
+                case NUMBER:
+                    direct.number(i, numberParser.value(), DirectXlsxWriter.dataStyle(isBlue, false));
+                    break;
+                default:
+                    direct.text(i, value, DirectXlsxWriter.dataStyle(isBlue, false));
+            }
+            if (!value.isEmpty()) {
+                types.record(i, written);
+                widths.record(i, value.length());
+            }
+        }
+        direct.endRow();
+    }
+
+    // Sets the typed value only; the style follows from the returned type (see StyleRegistry)
+    private ColumnTypes.Type writeCellValue(Cell cell, String value, ColumnTypes.Type expected) {
+        ColumnTypes.Type type = ColumnTypes.classify(value, expected, dateParser, numberParser);
+        switch (type) {
+            case DATE:
+                cell.setCellValue(dateParser.excelSerial());
+                break;
+            case NUMBER:
+                cell.setCellValue(numberParser.value());
+                break;
+            default:
+                cell.setCellValue(value);
+        }
+        return type;
+    }
+}
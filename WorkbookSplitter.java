@@ -0,0 +1,253 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Splits an xlsx export into workbooks of at most rowsPerPart data rows each: report_out.xlsx,
+ * report_out_2.xlsx, report_out_3.xlsx, ... Rejected rows go to the Rejected sheet of the part
+ * that is being filled when they occur.
+ *
+ * Every part is a WorkbookPart owned by its own thread. Rows are handed over in batches
+ * through a small bounded queue, so the parser keeps reading while the part thread builds
+ * cells, and a full part saves and compresses its file while the next one is filled. At most
+ * one part per core is open at a time; the oldest is waited for before another is started.
+ *
+ * For resumable conversions the parts that were completed are kept when the export is
+ * abandoned, and a later run continues after them (see resumeAfter).
+ */
+final class WorkbookSplitter implements Closeable {
+
+    private static final int BATCH_ROWS = 512;
+    private static final int QUEUED_BATCHES = 8;
+    private static final List<Object> END = Collections.emptyList();
+
+    private final Path firstPath;
+    private final List<String> headers;
+    private final String sourceFile;
+    private final int rowsPerPart;
+    private final boolean directXlsx;
+    private final long sharedStringsBudget;
+    private final int maxOpenParts = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final List<Path> reusedParts = new ArrayList<>();
+    private final List<Part> parts = new ArrayList<>();
+    private boolean keepCompletedParts;
+    private int oldestOpen;
+    private Part current;
+    private List<Object> batch = new ArrayList<>(BATCH_ROWS);
+    private boolean finished;
+
+    /**
+     * @param firstPath path of the first part; later parts get _2, _3, ... before the extension
+     * @param rowsPerPart data rows per workbook, at most WorkbookPart.MAX_ROWS_PER_SHEET
+     * @param sharedStringsBudget shared-strings budget shared by the open parts, or 0 for inline strings
+     */
+    WorkbookSplitter(Path firstPath, List<String> headers, String sourceFile, int rowsPerPart, boolean directXlsx,
+                     long sharedStringsBudget) {
+        this.firstPath = firstPath;
+        this.headers = headers;
+        this.sourceFile = sourceFile;
+        this.rowsPerPart = Math.max(1, Math.min(rowsPerPart, WorkbookPart.MAX_ROWS_PER_SHEET));
+        this.directXlsx = directXlsx;
+        this.sharedStringsBudget = sharedStringsBudget;
+    }
+
+    /**
+     * Path of part n (1-based): report_out.xlsx -&gt; report_out_2.xlsx.
+     */
+    static Path partPath(Path first, int n) {
+        if (n == 1) return first;
+        String name = first.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0
+                ? first.resolveSibling(name.substring(0, dot) + "_" + n + name.substring(dot))
+                : first.resolveSibling(name + "_" + n);
+    }
+
+    /**
+     * Removes the parts after the first parts that an earlier export with more parts left,
+     * so report_out_4.xlsx is not mistaken for part of a shorter export.
+     */
+    static void removePartsAfter(Path first, int parts) throws IOException {
+        for (int n = parts + 1; Files.deleteIfExists(partPath(first, n)); n++) {
+            // Parts are numbered without gaps, the first missing one ends the series
+        }
+    }
+
+    /**
+     * Continues an interrupted export: the first completedParts files are taken as they are
+     * and the next row starts part completedParts + 1. Must be called before the first row.
+     */
+    void resumeAfter(int completedParts) {
+        for (int n = 1; n <= completedParts; n++) reusedParts.add(partPath(firstPath, n));
+    }
+
+    /**
+     * Keeps the parts that were completely written when the export is abandoned, instead of
+     * removing every part (see close).
+     */
+    void setKeepCompletedParts(boolean keep) {
+        this.keepCompletedParts = keep;
+    }
+
+    /**
+     * @return number of parts started so far, including reused ones
+     */
+    int partCount() {
+        return reusedParts.size() + parts.size();
+    }
+
+    /**
+     * @return number of leading parts whose file is completely written, including reused ones
+     */
+    int completedParts() {
+        int n = reusedParts.size();
+        for (Part p : parts) {
+            if (!p.written) break;
+            n++;
+        }
+        return n;
+    }
+
+    void row(TransactionRow row) throws IOException, InterruptedException {
+        if (current == null || current.rows == rowsPerPart) {
+            startPart();
+        }
+        current.rows++;
+        add(row);
+    }
+
+    void rejected(String rowContext, String reason) throws IOException, InterruptedException {
+        if (current == null) startPart();
+        add(new String[] { rowContext, reason });
+    }
+
+    /**
+     * Waits until every part is written, then removes parts of an earlier, longer export.
+     *
+     * @return the files written, in order
+     */
+    List<Path> finish() throws IOException, InterruptedException {
+        if (current == null) startPart(); // no valid rows: still write a (header-only) workbook
+        seal(current);
+        List<Path> paths = new ArrayList<>(reusedParts);
+        for (Part p : parts) {
+            p.thread.join();
+            p.checkFailure();
+            paths.add(p.path);
+        }
+        finished = true;
+        removePartsAfter(firstPath, paths.size());
+        return paths;
+    }
+
+    /**
+     * Stops the part threads of an export that did not finish and removes the parts that were
+     * already written, apart from the completed ones if setKeepCompletedParts was set.
+     */
+    @Override
+    public void close() {
+        if (finished) return;
+        finished = true;
+        for (Part p : parts) p.thread.interrupt();
+        for (Part p : parts) {
+            try {
+                p.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (keepCompletedParts && p.written) continue;
+            try { Files.deleteIfExists(p.path); } catch (IOException ignore) {}
+        }
+    }
+
+    private void add(Object item) throws IOException, InterruptedException {
+        batch.add(item);
+        if (batch.size() == BATCH_ROWS) {
+            current.checkFailure();
+            current.queue.put(batch);
+            batch = new ArrayList<>(BATCH_ROWS);
+        }
+    }
+
+    private void startPart() throws IOException, InterruptedException {
+        if (current != null) seal(current);
+        while (parts.size() - oldestOpen >= maxOpenParts) {
+            Part oldest = parts.get(oldestOpen++);
+            oldest.thread.join();
+            oldest.checkFailure();
+        }
+        current = new Part(partPath(firstPath, partCount() + 1));
+        parts.add(current);
+        current.thread.start();
+    }
+
+    private void seal(Part part) throws InterruptedException {
+        if (!batch.isEmpty()) {
+            part.queue.put(batch);
+            batch = new ArrayList<>(BATCH_ROWS);
+        }
+        part.queue.put(END);
+    }
+
+    /**
+     * One output file and the thread writing it.
+     */
+    private final class Part implements Runnable {
+        final Path path;
+        final BlockingQueue<List<Object>> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        final Thread thread;
+        long rows; // data rows handed over, counted by the producer
+        volatile Throwable failure;
+        volatile boolean written; // the file is complete
+
+        Part(Path path) {
+            this.path = path;
+            this.thread = new Thread(this, "xlsx-" + path.getFileName());
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            WorkbookPart part = null;
+            try {
+                part = new WorkbookPart(path, headers, sourceFile, rowsPerPart, directXlsx || sharedStringsBudget > 0,
+                        sharedStringsBudget > 0 ? new SharedStringTable(sharedStringsBudget / maxOpenParts) : null);
+                List<Object> items;
+                while ((items = queue.take()) != END) {
+                    for (Object item : items) {
+                        if (item instanceof TransactionRow) {
+                            part.row((TransactionRow) item);
+                        } else {
+                            String[] rejected = (String[]) item;
+                            part.rejected(rejected[0], rejected[1]);
+                        }
+                    }
+                }
+                part.finish();
+                written = true;
+            } catch (InterruptedException e) {
+                // Export abandoned, see close()
+            } catch (Throwable t) {
+                failure = t;
+                // Keep taking batches so the producer never blocks on a dead part
+                try {
+                    while (queue.take() != END) { }
+                } catch (InterruptedException ignore) { }
+            } finally {
+                if (part != null) part.close();
+            }
+        }
+
+        void checkFailure() throws IOException {
+            Throwable t = failure;
+            if (t != null) throw new IOException("Writing " + path.getFileName() + " failed: " + t.getMessage(), t);
+        }
+    }
+}
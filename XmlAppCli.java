@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * Command-line entry point for machines without a display. Converts the given files,
+ * directories (their *.xml files) and glob patterns with a BatchConverter, or with --watch
+ * keeps converting XML files as they land in a drop folder (see DropFolderWatcher).
+ *
+ * Exit status: 0 if every file was converted, 1 if any failed or the run was cancelled,
+ * 2 for usage errors.
+ */
+public class XmlAppCli {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+        "Usage: XmlAppCli [options] <file|directory|glob>...",
+        "       XmlAppCli [options] --watch <directory>",
+        "",
+        "Options:",
+        "  --format xlsx|csv|jsonl   output format (default xlsx)",
+        "  --out <directory>         write outputs here instead of next to each input",
+        "  --threads <n>             files converted at the same time (default " + BatchConverter.defaultThreads() + ")",
+        "  --parallel                parse each file on all cores",
+        "  --fast-scan               byte-level scanner for plain UTF-8 exports",
+        "  --direct-xlsx             stream xlsx output without Apache POI temp files",
+        "  --shared-strings          deduplicate xlsx text (implies --direct-xlsx)",
+        "  --gzip                    gzip CSV/JSON Lines output",
+        "  --split-workbooks         continue past the sheet row limit in further files",
+        "  --rows-per-part <n>       data rows per sheet or split file",
+        "  --rules <file>            validation rules (default validation.properties)",
+        "  --resume                  keep checkpoints; continue interrupted CSV/JSONL/split conversions",
+        "  --cache                   reuse the output of unchanged inputs converted before",
+        "  --incremental             append only the vouchers added since the last conversion",
+        "  --watch <directory>       convert XML files dropped into the directory until stopped",
+        "  --settle-ms <ms>          watch mode: wait until a file is unchanged this long (default 2000)",
+        "  --help                    show this help");
+
+    private static XmlParser.OutputFormat format = XmlParser.OutputFormat.XLSX;
+    private static Path outputDirectory;
+    private static int threads = BatchConverter.defaultThreads();
+    private static boolean parallelParsing;
+    private static boolean fastScan;
+    private static boolean directXlsx;
+    private static boolean sharedStrings;
+    private static boolean compressOutput;
+    private static boolean splitWorkbooks;
+    private static int rowsPerPart;
+    private static Path rulesFile;
+    private static boolean resumable;
+    private static boolean useCache;
+    private static boolean incremental;
+    private static Path watchDirectory;
+    private static long settleMillis = 2000;
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        List<String> operands = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String a = args[i];
+                switch (a) {
+                    case "--format":
+                        format = parseFormat(value(args, ++i, a));
+                        break;
+                    case "--out": outputDirectory = Paths.get(value(args, ++i, a)); break;
+                    case "--threads": threads = Integer.parseInt(value(args, ++i, a)); break;
+                    case "--parallel": parallelParsing = true; break;
+                    case "--fast-scan": fastScan = true; break;
+                    case "--direct-xlsx": directXlsx = true; break;
+                    case "--shared-strings": sharedStrings = true; break;
+                    case "--gzip": compressOutput = true; break;
+                    case "--split-workbooks": splitWorkbooks = true; break;
+                    case "--rows-per-part": rowsPerPart = Integer.parseInt(value(args, ++i, a)); break;
+                    case "--rules": rulesFile = Paths.get(value(args, ++i, a)); break;
+                    case "--resume": resumable = true; break;
+                    case "--cache": useCache = true; break;
+                    case "--incremental": incremental = true; break;
+                    case "--watch": watchDirectory = Paths.get(value(args, ++i, a)); break;
+                    case "--settle-ms": settleMillis = Long.parseLong(value(args, ++i, a)); break;
+                    case "--help":
+                    case "-h":
+                        System.out.println(USAGE);
+                        return 0;
+                    default:
+                        if (a.startsWith("--")) throw new IllegalArgumentException("Unknown option " + a);
+                        operands.add(a);
+                }
+            }
+            if (threads < 1) throw new IllegalArgumentException("--threads must be at least 1");
+            if (watchDirectory == null && operands.isEmpty()) throw new IllegalArgumentException("No input files given");
+            if (watchDirectory != null && !operands.isEmpty()) throw new IllegalArgumentException("--watch takes no input files");
+            if (outputDirectory != null) Files.createDirectories(outputDirectory);
+        } catch (IllegalArgumentException | IOException e) {
+            err(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        try {
+            return watchDirectory != null ? watch() : convert(operands);
+        } catch (IllegalArgumentException | IOException e) {
+            err(e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Creates a parser for the input with the options given on the command line.
+     */
+    static XmlParser createParser(Path input) throws Exception {
+        XmlParser parser = new XmlParser(input, outputPath(input), format);
+        parser.setParallelParsing(parallelParsing);
+        parser.setFastScan(fastScan);
+        parser.setDirectXlsx(directXlsx);
+        parser.setSharedStrings(sharedStrings);
+        parser.setCompressOutput(compressOutput);
+        parser.setRollover(splitWorkbooks ? XmlParser.Rollover.WORKBOOKS : XmlParser.Rollover.SHEETS);
+        if (rowsPerPart > 0) parser.setRowsPerPart(rowsPerPart);
+        if (rulesFile != null) parser.setValidationRulesFile(rulesFile);
+        parser.setResumable(resumable);
+        parser.setUseCache(useCache);
+        parser.setIncremental(incremental);
+        return parser;
+    }
+
+    /**
+     * Logs the outcome and throughput of one conversion.
+     */
+    static void logResult(BatchConverter.Result r) {
+        String name = r.input.getFileName().toString();
+        double seconds = r.nanos / 1e9;
+        switch (r.status) {
+            case DONE:
+                log(String.format(Locale.ROOT, "%s: %.1f MB in %.1f s (%.1f MB/s) -> %s", name,
+                        r.inputBytes / (1024.0 * 1024.0), seconds, r.mbPerSecond(),
+                        r.outputs.isEmpty() ? "no output (no data)" : r.outputs));
+                break;
+            case FAILED:
+                err(String.format(Locale.ROOT, "%s: failed after %.1f s: %s", name, seconds, r.error));
+                break;
+            default:
+                log(name + ": cancelled");
+        }
+    }
+
+    /**
+     * @return where the input is converted to: input_out.ext next to it, or in --out
+     */
+    static Path outputPath(Path input) {
+        String name = input.getFileName().toString();
+        String nameWithoutExtension = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+        Path directory = outputDirectory != null ? outputDirectory : input.toAbsolutePath().getParent();
+        return directory.resolve(nameWithoutExtension + "_out." + format.extension()).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Rejects inputs that would be converted to the same file, such as a/ledger.xml and
+     * b/ledger.xml with --out: they run concurrently and would share the output and its .tmp.
+     */
+    static void checkOutputs(List<Path> inputs) {
+        Map<Path, Path> targets = new HashMap<>();
+        for (Path input : inputs) {
+            Path other = targets.put(outputPath(input), input);
+            if (other != null) {
+                throw new IllegalArgumentException(other + " and " + input + " would both be written to "
+                        + outputPath(input) + "; convert them separately or rename one");
+            }
+        }
+    }
+
+    static void log(String s) {
+        System.out.println("[INFO] " + s);
+    }
+
+    static void err(String s) {
+        System.err.println("[ERR] " + s);
+    }
+
+    private static int convert(List<String> operands) throws IOException, InterruptedException {
+        List<Path> inputs = expand(operands);
+        if (inputs.isEmpty()) throw new IllegalArgumentException("No XML files found");
+        checkOutputs(inputs);
+        log("Converting " + inputs.size() + " file(s) on " + Math.min(threads, inputs.size()) + " thread(s)");
+
+        BatchConverter converter = new BatchConverter(inputs, XmlAppCli::createParser, threads, new BatchConverter.Listener() {
+            @Override
+            public void onFileStatus(int index, BatchConverter.Status status, String message) {
+                // Per-file messages are logged by XmlParser itself
+            }
+
+            @Override
+            public void onResult(int index, BatchConverter.Result result) {
+                logResult(result);
+            }
+
+            @Override
+            public void onProgress(int filesDone, int fileCount, long bytesDone, long totalBytes, double mbPerSecond) {
+                log(String.format(Locale.ROOT, "%d/%d files done, %.1f MB/s overall",
+                        filesDone, fileCount, mbPerSecond));
+            }
+        });
+
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread hook = new Thread(() -> {
+            converter.cancel();
+            try { finished.await(); } catch (InterruptedException ignore) { }
+        });
+        Runtime.getRuntime().addShutdownHook(hook);
+
+        List<BatchConverter.Result> results;
+        long batchStart = System.nanoTime();
+        try {
+            results = converter.run();
+        } finally {
+            finished.countDown();
+        }
+        try { Runtime.getRuntime().removeShutdownHook(hook); } catch (IllegalStateException ignore) { }
+
+        int failed = 0;
+        long bytes = 0;
+        for (BatchConverter.Result r : results) {
+            if (r.status == BatchConverter.Status.DONE) {
+                bytes += r.inputBytes;
+            } else {
+                failed++;
+            }
+        }
+        double seconds = (System.nanoTime() - batchStart) / 1e9;
+        log(String.format(Locale.ROOT, "%d of %d file(s) converted in %.1f s (%.1f MB/s)",
+                results.size() - failed, results.size(), seconds, bytes / (1024.0 * 1024.0) / Math.max(1e-3, seconds)));
+        return failed == 0 ? 0 : 1;
+    }
+
+    private static int watch() throws IOException {
+        DropFolderWatcher watcher = new DropFolderWatcher(watchDirectory, XmlAppCli::createParser, threads, settleMillis,
+                XmlAppCli::logResult);
+        Thread main = Thread.currentThread();
+        CountDownLatch stopped = new CountDownLatch(1);
+        // Ctrl+C / SIGTERM: cancel running conversions (their partial output is removed) before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            watcher.stop();
+            main.interrupt();
+            try { stopped.await(); } catch (InterruptedException ignore) { }
+        }));
+        try {
+            watcher.run();
+        } catch (InterruptedException e) {
+            log("Stopped watching " + watchDirectory);
+        } finally {
+            stopped.countDown();
+        }
+        return 0;
+    }
+
+    private static XmlParser.OutputFormat parseFormat(String name) {
+        for (XmlParser.OutputFormat f : XmlParser.OutputFormat.values()) {
+            if (f.extension().equalsIgnoreCase(name)) return f;
+        }
+        throw new IllegalArgumentException("Unknown format " + name + " (xlsx, csv or jsonl)");
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    /**
+     * Resolves files, directories (their *.xml files) and glob patterns, in argument order
+     * and without duplicates.
+     */
+    static List<Path> expand(List<String> operands) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String operand : operands) {
+            int glob = firstGlobChar(operand);
+            if (glob >= 0) {
+                int sep = Math.max(operand.lastIndexOf('/', glob), operand.lastIndexOf(java.io.File.separatorChar, glob));
+                Path base = sep >= 0 ? Paths.get(operand.substring(0, sep + 1)) : Paths.get(".");
+                String pattern = operand.substring(sep + 1);
+                PathMatcher matcher = base.getFileSystem().getPathMatcher("glob:" + pattern);
+                if (!Files.isDirectory(base)) throw new IllegalArgumentException("No such directory: " + base);
+                try (Stream<Path> s = pattern.contains("**") || pattern.contains("/") ? Files.walk(base) : Files.list(base)) {
+                    s.filter(p -> Files.isRegularFile(p) && matcher.matches(base.relativize(p)))
+                     .sorted()
+                     .forEach(p -> files.add(p.toAbsolutePath().normalize()));
+                }
+            } else {
+                Path p = Paths.get(operand);
+                if (Files.isDirectory(p)) {
+                    try (Stream<Path> s = Files.list(p)) {
+                        s.filter(DropFolderWatcher::isXmlFile)
+                         .sorted()
+                         .forEach(f -> files.add(f.toAbsolutePath().normalize()));
+                    }
+                } else if (Files.isRegularFile(p)) {
+                    files.add(p.toAbsolutePath().normalize());
+                } else {
+                    throw new IllegalArgumentException("No such file: " + operand);
+                }
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static int firstGlobChar(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') return i;
+        }
+        return -1;
+    }
+}
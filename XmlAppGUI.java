@@ -33,6 +33,16 @@ public class XmlAppGUI {
     private static volatile boolean isCanceled = false; // Flag for canceling operations
     private static boolean showDetailedView = false; // Controls detailed file properties view
     private static boolean enableCSVExport = false; // Controls CSV export instead of Excel
+    private static boolean enableJsonExport = false; // Controls JSON Lines export instead of Excel
+    private static boolean enableCompression = false; // gzip-compresses CSV/JSON Lines output
+    private static boolean enableWorkbookSplit = false; // Excel rows beyond one sheet go to further files instead of sheets
+    private static boolean enableResume = false; // Keeps a checkpoint so interrupted conversions can continue
+    private static boolean enableCache = false; // Reuses the output of identical earlier conversions
+    private static boolean enableIncremental = false; // Appends only the vouchers added since the last conversion
+    private static boolean enableParallelParsing = false; // Parses GL_VOUCHER blocks on all cores
+    private static boolean enableFastScan = false; // Byte-level scanner for plain UTF-8 exports
+    private static boolean enableDirectXlsx = false; // Streams xlsx parts directly instead of using SXSSF
+    private static boolean enableSharedStrings = false; // Deduplicates repeated text in xlsx output
 
     /**
      * Formats file size in human readable format
@@ -63,13 +73,75 @@ public class XmlAppGUI {
             return "Excel Workbook";
         } else if (fileName.endsWith(".csv")) {
             return "CSV File";
+        } else if (fileName.endsWith(".jsonl")) {
+            return "JSON Lines File";
+        } else if (fileName.endsWith(".gz")) {
+            return "Compressed File";
         } else {
             return "Unknown Type";
         }
     }
 
+    /**
+     * Output format chosen in the Options menu
+     */
+    private static XmlParser.OutputFormat selectedOutputFormat() {
+        if (enableJsonExport) return XmlParser.OutputFormat.JSONL;
+        return enableCSVExport ? XmlParser.OutputFormat.CSV : XmlParser.OutputFormat.XLSX;
+    }
+
+    /**
+     * Creates a parser for the input file with the settings of the Options menu.
+     * @param outputDirectory folder for the output, or null for the input file's folder
+     */
+    private static XmlParser createParser(File input, File outputDirectory) throws Exception {
+        XmlParser parser;
+        if (outputDirectory == null) {
+            // Use default path (same as input file location); manual naming falls back to auto naming for now
+            parser = new XmlParser(input.toPath(), selectedOutputFormat());
+        } else {
+            // Use custom output directory
+            String inputFileName = input.getName();
+            String nameWithoutExtension = inputFileName.contains(".") ? 
+                inputFileName.substring(0, inputFileName.lastIndexOf('.')) : inputFileName;
+            String outputFileName = nameWithoutExtension + "_out." + selectedOutputFormat().extension();
+            
+            java.nio.file.Path customOutputPath = outputDirectory.toPath().resolve(outputFileName);
+            parser = new XmlParser(input.toPath(), customOutputPath, selectedOutputFormat());
+        }
+        
+        parser.setParallelParsing(enableParallelParsing);
+        parser.setFastScan(enableFastScan);
+        parser.setDirectXlsx(enableDirectXlsx);
+        parser.setSharedStrings(enableSharedStrings);
+        parser.setCompressOutput(enableCompression);
+        parser.setRollover(enableWorkbookSplit ? XmlParser.Rollover.WORKBOOKS : XmlParser.Rollover.SHEETS);
+        parser.setResumable(enableResume);
+        parser.setUseCache(enableCache);
+        parser.setIncremental(enableIncremental);
+        return parser;
+    }
+
+    /**
+     * Shows the share of the input read in the current phase, e.g. "Converting: 45%, 0:12 left".
+     * Finalizing has no byte progress and is shown as indeterminate.
+     */
+    private static void showProgress(JProgressBar progressBar, XmlParser.Progress progress) {
+        if (progress.phase == XmlParser.Progress.Phase.FINISHING) {
+            progressBar.setIndeterminate(true);
+            progressBar.setStringPainted(false);
+            return;
+        }
+        progressBar.setIndeterminate(false);
+        progressBar.setValue((int) Math.round(progress.fraction() * progressBar.getMaximum()));
+        progressBar.setString((progress.phase == XmlParser.Progress.Phase.SCANNING ? "Analyzing: " : "Converting: ")
+                + (int) (progress.fraction() * 100) + "%"
+                + (progress.etaMillis >= 0 ? ", " + ProgressMeter.formatDuration(progress.etaMillis) + " left" : ""));
+        progressBar.setStringPainted(true);
+    }
+
     private static String createErrorMessage(Throwable ex) {
-        String message = ex.getMessage().toLowerCase();
+        String message = String.valueOf(ex.getMessage()).toLowerCase();
         if (ex instanceof InterruptedException) {
             return "The process is cancelled.";
         }
@@ -503,9 +575,10 @@ public class XmlAppGUI {
             JSeparator separator = new JSeparator(SwingConstants.HORIZONTAL);
             separator.setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 0));
             
-            JProgressBar progressBar = new JProgressBar();
+            // Indeterminate until the parser reports how far it has read the input
+            JProgressBar progressBar = new JProgressBar(0, 1000);
             progressBar.setIndeterminate(true);
-            progressBar.setStringPainted(false); // Don't show text inside the bar
+            progressBar.setStringPainted(false);
             
             // Create a panel for status and progress bar
             JPanel progressSubPanel = new JPanel(new BorderLayout(5, 5));
@@ -548,24 +621,18 @@ public class XmlAppGUI {
                     try {
                         publish("Initializing parser...");
                         
-                        if (useDefaultOutputPath) {
-                            // Use default path (same as input file location)
-                            if (useAutoNaming) {
-                                parser = new XmlParser(selectedFileFromList.toPath(), enableCSVExport);
-                            } else {
-                                // For manual naming with default path, we'll use a simpler approach
-                                parser = new XmlParser(selectedFileFromList.toPath(), enableCSVExport); // Fallback to auto naming for now
+                        parser = createParser(selectedFileFromList, outputDirectory);
+                        parser.setProgressListener(new XmlParser.ProgressListener() {
+                            @Override
+                            public void onProgress(String message) {
+                                publish(message);
                             }
-                        } else {
-                            // Use custom output directory
-                            String inputFileName = selectedFileFromList.getName();
-                            String nameWithoutExtension = inputFileName.contains(".") ? 
-                                inputFileName.substring(0, inputFileName.lastIndexOf('.')) : inputFileName;
-                            String outputFileName = nameWithoutExtension + "_out." + (enableCSVExport ? "csv" : "xlsx");
                             
-                            java.nio.file.Path customOutputPath = outputDirectory.toPath().resolve(outputFileName);
-                            parser = new XmlParser(selectedFileFromList.toPath(), customOutputPath, enableCSVExport);
-                        }
+                            @Override
+                            public void onProgress(XmlParser.Progress progress) {
+                                SwingUtilities.invokeLater(() -> showProgress(progressBar, progress));
+                            }
+                        });
                         
                         if (isCanceled) {
                             parser.cancel();
@@ -607,14 +674,20 @@ public class XmlAppGUI {
                     try {
                         XmlParser result = get();
                         if (result != null) {
-                            // Add to output list
-                            File processedFile = result.getOutputPath().toFile();
-                            if (outputFilesModel.contains(processedFile)) {
-                                outputFilesModel.removeElement(processedFile);
+                            // Add to output list (a split export has several files)
+                            java.util.List<java.nio.file.Path> outputs = result.getOutputPaths();
+                            if (outputs.isEmpty()) outputs = java.util.Collections.singletonList(result.getOutputPath());
+                            for (java.nio.file.Path output : outputs) {
+                                File processedFile = output.toFile();
+                                if (outputFilesModel.contains(processedFile)) {
+                                    outputFilesModel.removeElement(processedFile);
+                                }
+                                outputFilesModel.addElement(processedFile);
                             }
-                            outputFilesModel.addElement(processedFile);
                             
-                            JOptionPane.showMessageDialog(frame, "File processed successfully!\nOutput: " + result.getOutputPath().getFileName(), "Success", JOptionPane.INFORMATION_MESSAGE);
+                            String outputText = outputs.size() == 1 ? outputs.get(0).getFileName().toString()
+                                : outputs.get(0).getFileName() + " (+" + (outputs.size() - 1) + " more files)";
+                            JOptionPane.showMessageDialog(frame, "File processed successfully!\nOutput: " + outputText, "Success", JOptionPane.INFORMATION_MESSAGE);
                         }
                     } catch (Exception ex) {
                         // Create custom dialog with "Remove from List" option
@@ -642,6 +715,36 @@ public class XmlAppGUI {
             progressDialog.setVisible(true);
         });
 
+        // Process Batch button: the selected files, or the whole input list if at most one is selected
+        JButton batchButton = new JButton("Process Batch");
+        batchButton.addActionListener(e -> {
+            java.util.List<File> files = inputFilesList.getSelectedValuesList();
+            if (files.size() < 2) {
+                files = java.util.Collections.list(inputFilesModel.elements());
+            }
+            if (files.isEmpty()) {
+                JOptionPane.showMessageDialog(frame, "Please add files to the input list first!", "No Files", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            
+            final File outputDirectory;
+            if (!useDefaultOutputPath) {
+                JFileChooser outputFolderChooser = new JFileChooser();
+                outputFolderChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                outputFolderChooser.setDialogTitle("Select Output Folder");
+                outputFolderChooser.setCurrentDirectory(files.get(0).getParentFile());
+                
+                if (outputFolderChooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+                    return; // User canceled folder selection
+                }
+                outputDirectory = outputFolderChooser.getSelectedFile();
+            } else {
+                outputDirectory = null; // Use default path
+            }
+            
+            processBatch(frame, files, outputDirectory, outputFilesModel);
+        });
+        
         JButton openLastButton = new JButton("Open Last Output");
         openLastButton.addActionListener(e -> {
             if (!outputFilesModel.isEmpty()) {
@@ -734,11 +837,12 @@ public class XmlAppGUI {
 
         // Panel for buttons and their design
         JPanel buttonPanel = new JPanel();
-            buttonPanel.setLayout(new GridLayout(1, 4, 10, 0)); // 1 row, 4 columns, 10px horizontal gap
+            buttonPanel.setLayout(new GridLayout(1, 5, 10, 0)); // 1 row, 5 columns, 10px horizontal gap
             buttonPanel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12)); // Reduced padding
 
             buttonPanel.add(loadFileButton);
             buttonPanel.add(processButton);
+            buttonPanel.add(batchButton);
             buttonPanel.add(openLastButton);
             buttonPanel.add(deleteAllButton);
 
@@ -799,7 +903,7 @@ public class XmlAppGUI {
             frame.setJMenuBar(createUpperMenu(frame, fileChooser, inputFilesModel, outputFilesModel, 
                                             filePanel, buttonPanel, listsPanel, inputFilesList, outputFilesList, 
                                             selectedFileLabel, statusPanel, statusBarLabel, fileCountLabel,
-                                            loadFileButton, processButton, openLastButton, deleteAllButton));
+                                            loadFileButton, processButton, batchButton, openLastButton, deleteAllButton));
             frame.add(filePanel, BorderLayout.NORTH);     // Top - small fixed height
             frame.add(listsPanel, BorderLayout.CENTER);   // Middle - takes remaining space
             frame.add(bottomPanel, BorderLayout.SOUTH);   // Bottom - buttons + status bar
@@ -807,7 +911,7 @@ public class XmlAppGUI {
             // Apply initial theme (including status bar)
             applyTheme(frame, filePanel, buttonPanel, listsPanel, inputFilesList, outputFilesList, 
                       statusPanel, statusBarLabel, fileCountLabel,
-                      loadFileButton, processButton, openLastButton, deleteAllButton);
+                      loadFileButton, processButton, batchButton, openLastButton, deleteAllButton);
             
             frame.setVisible(true);
     }
@@ -1297,14 +1401,112 @@ public class XmlAppGUI {
         JMenu optionsMenu = new JMenu("Options");
         
         JCheckBoxMenuItem enableCSV = new JCheckBoxMenuItem("Enable CSV Export");
+        JCheckBoxMenuItem enableJson = new JCheckBoxMenuItem("Enable JSON Lines Export");
         enableCSV.addActionListener(e -> {
             enableCSVExport = enableCSV.isSelected();
+            if (enableCSVExport) {
+                enableJsonExport = false;
+                enableJson.setSelected(false);
+            }
             String message = enableCSVExport ? 
                 "CSV Export enabled. Files will be saved as .csv format." :
                 "CSV Export disabled. Files will be saved as .xlsx format.";
             showTemporaryMessage(frame, message, "CSV Export Setting");
         });
         
+        enableJson.addActionListener(e -> {
+            enableJsonExport = enableJson.isSelected();
+            if (enableJsonExport) {
+                enableCSVExport = false;
+                enableCSV.setSelected(false);
+            }
+            String message = enableJsonExport ?
+                "JSON Lines Export enabled. Files will be saved as .jsonl format, one JSON object per row." :
+                "JSON Lines Export disabled. Files will be saved as .xlsx format.";
+            showTemporaryMessage(frame, message, "JSON Lines Export Setting");
+        });
+        
+        JCheckBoxMenuItem compressionToggle = new JCheckBoxMenuItem("Compress Output (gzip)");
+        compressionToggle.addActionListener(e -> {
+            enableCompression = compressionToggle.isSelected();
+            String message = enableCompression ?
+                "Compression enabled. CSV and JSON Lines files are saved gzip-compressed (.gz), compressed on all CPU cores." :
+                "Compression disabled. CSV and JSON Lines files are saved uncompressed.";
+            showTemporaryMessage(frame, message, "Output Setting");
+        });
+        
+        JCheckBoxMenuItem parallelParsingToggle = new JCheckBoxMenuItem("Parallel Parsing");
+        parallelParsingToggle.addActionListener(e -> {
+            enableParallelParsing = parallelParsingToggle.isSelected();
+            String message = enableParallelParsing ?
+                "Parallel parsing enabled. Large files are split by GL_VOUCHER and parsed on all CPU cores." :
+                "Parallel parsing disabled. Files are parsed on a single thread.";
+            showTemporaryMessage(frame, message, "Parsing Setting");
+        });
+        
+        JCheckBoxMenuItem fastScanToggle = new JCheckBoxMenuItem("Fast Scan");
+        fastScanToggle.addActionListener(e -> {
+            enableFastScan = fastScanToggle.isSelected();
+            String message = enableFastScan ?
+                "Fast scan enabled. Plain UTF-8 exports are read with a byte-level scanner; other files use the standard parser." :
+                "Fast scan disabled. Files are read with the standard XML parser.";
+            showTemporaryMessage(frame, message, "Parsing Setting");
+        });
+        
+        JCheckBoxMenuItem directXlsxToggle = new JCheckBoxMenuItem("Direct XLSX Writer");
+        directXlsxToggle.addActionListener(e -> {
+            enableDirectXlsx = directXlsxToggle.isSelected();
+            String message = enableDirectXlsx ?
+                "Direct XLSX writer enabled. Excel files are streamed straight to disk without temporary files." :
+                "Direct XLSX writer disabled. Excel files are written with Apache POI.";
+            showTemporaryMessage(frame, message, "Output Setting");
+        });
+        
+        JCheckBoxMenuItem sharedStringsToggle = new JCheckBoxMenuItem("Shared Strings");
+        sharedStringsToggle.addActionListener(e -> {
+            enableSharedStrings = sharedStringsToggle.isSelected();
+            String message = enableSharedStrings ?
+                "Shared strings enabled. Repeated text is stored once, making Excel files smaller (uses the direct XLSX writer)." :
+                "Shared strings disabled. Text is stored in each cell.";
+            showTemporaryMessage(frame, message, "Output Setting");
+        });
+        
+        JCheckBoxMenuItem workbookSplitToggle = new JCheckBoxMenuItem("Split Large Excel Exports into Files");
+        workbookSplitToggle.addActionListener(e -> {
+            enableWorkbookSplit = workbookSplitToggle.isSelected();
+            String message = enableWorkbookSplit ?
+                "Workbook splitting enabled. Rows beyond Excel's sheet limit continue in _2, _3, ... files, written in parallel." :
+                "Workbook splitting disabled. Rows beyond Excel's sheet limit continue on Data_2, Data_3, ... sheets.";
+            showTemporaryMessage(frame, message, "Output Setting");
+        });
+        
+        JCheckBoxMenuItem resumeToggle = new JCheckBoxMenuItem("Resume Interrupted Conversions");
+        resumeToggle.addActionListener(e -> {
+            enableResume = resumeToggle.isSelected();
+            String message = enableResume ?
+                "Resume enabled. A cancelled or failed CSV, JSON Lines or split Excel conversion continues where it stopped when it is run again." :
+                "Resume disabled. Cancelled conversions are removed and start over.";
+            showTemporaryMessage(frame, message, "Output Setting");
+        });
+        
+        JCheckBoxMenuItem cacheToggle = new JCheckBoxMenuItem("Reuse Earlier Conversions");
+        cacheToggle.addActionListener(e -> {
+            enableCache = cacheToggle.isSelected();
+            String message = enableCache ?
+                "Conversion cache enabled. Converting an unchanged file again with the same options reuses the earlier output instantly." :
+                "Conversion cache disabled. Every file is converted again.";
+            showTemporaryMessage(frame, message, "Output Setting");
+        });
+        
+        JCheckBoxMenuItem incrementalToggle = new JCheckBoxMenuItem("Append New Data Only");
+        incrementalToggle.addActionListener(e -> {
+            enableIncremental = incrementalToggle.isSelected();
+            String message = enableIncremental ?
+                "Incremental conversion enabled. Converting a file that has grown again appends only the new vouchers to the existing output." :
+                "Incremental conversion disabled. Files are converted from the start.";
+            showTemporaryMessage(frame, message, "Output Setting");
+        });
+        
         JCheckBoxMenuItem darkModeToggle = new JCheckBoxMenuItem("Dark Mode");
         darkModeToggle.addActionListener(e -> {
             isDarkMode = darkModeToggle.isSelected();
@@ -1351,6 +1553,16 @@ public class XmlAppGUI {
         });
         
         optionsMenu.add(enableCSV);
+        optionsMenu.add(enableJson);
+        optionsMenu.add(compressionToggle);
+        optionsMenu.add(parallelParsingToggle);
+        optionsMenu.add(fastScanToggle);
+        optionsMenu.add(directXlsxToggle);
+        optionsMenu.add(sharedStringsToggle);
+        optionsMenu.add(workbookSplitToggle);
+        optionsMenu.add(resumeToggle);
+        optionsMenu.add(cacheToggle);
+        optionsMenu.add(incrementalToggle);
         optionsMenu.add(darkModeToggle);
         optionsMenu.add(autoNamingToggle);
         optionsMenu.add(defaultOutputPathToggle);
@@ -1449,7 +1661,7 @@ public class XmlAppGUI {
                                  "• Excel/compatible viewer recommended\n\n" +
                                  "Formats:\n" +
                                  "• Input: .xml files\n" +
-                                 "• Output: .xlsx, .csv\n" +
+                                 "• Output: .xlsx, .csv, .jsonl\n" +
                                  "• Unicode support\n\n" +
                                  "Safety:\n" +
                                  "• Original files never modified\n" +
@@ -1484,6 +1696,140 @@ public class XmlAppGUI {
         return menuBar;
     }
 
+    /**
+     * Converts the files with a BatchConverter behind a modal dialog listing the status of every
+     * file, with a progress bar over the files and the aggregate throughput. Worker threads only
+     * record their updates; a timer copies them into the dialog, so busy conversions do not
+     * flood the event queue.
+     */
+    private static void processBatch(JFrame frame, java.util.List<File> files, File outputDirectory,
+                                     DefaultListModel<File> outputFilesModel) {
+        java.util.List<java.nio.file.Path> inputs = new java.util.ArrayList<>();
+        for (File f : files) inputs.add(f.toPath());
+        
+        java.util.concurrent.atomic.AtomicReferenceArray<String> fileStatus =
+            new java.util.concurrent.atomic.AtomicReferenceArray<>(files.size());
+        java.util.concurrent.atomic.AtomicReference<String> totals =
+            new java.util.concurrent.atomic.AtomicReference<>("Starting...");
+        java.util.concurrent.atomic.AtomicInteger filesDone = new java.util.concurrent.atomic.AtomicInteger();
+        
+        BatchConverter converter = new BatchConverter(inputs, input -> createParser(input.toFile(), outputDirectory),
+            BatchConverter.defaultThreads(), new BatchConverter.Listener() {
+                @Override
+                public void onFileStatus(int index, BatchConverter.Status status, String message) {
+                    String text = status == BatchConverter.Status.RUNNING && message != null ? message
+                        : status == BatchConverter.Status.FAILED ? "Failed: " + message
+                        : status.name().charAt(0) + status.name().substring(1).toLowerCase();
+                    fileStatus.set(index, files.get(index).getName() + "  -  " + text);
+                }
+                
+                @Override
+                public void onProgress(int done, int fileCount, long bytesDone, long totalBytes, double mbPerSecond) {
+                    filesDone.set(done);
+                    totals.set(done + " of " + fileCount + " files, " + formatFileSize(bytesDone) + " of "
+                        + formatFileSize(totalBytes) + String.format(" (%.1f MB/s)", mbPerSecond));
+                }
+            });
+        
+        JDialog progressDialog = new JDialog(frame, "Processing " + files.size() + " Files", true);
+        progressDialog.setSize(520, 360);
+        progressDialog.setLocationRelativeTo(frame);
+        progressDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        
+        JPanel progressPanel = new JPanel(new BorderLayout(10, 10));
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+        
+        JLabel totalsLabel = new JLabel(totals.get());
+        totalsLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        totalsLabel.setFont(totalsLabel.getFont().deriveFont(java.awt.Font.BOLD, 13f));
+        
+        DefaultListModel<String> statusModel = new DefaultListModel<>();
+        for (File f : files) statusModel.addElement(f.getName() + "  -  Queued");
+        JList<String> statusList = new JList<>(statusModel);
+        
+        JProgressBar progressBar = new JProgressBar(0, files.size());
+        progressBar.setStringPainted(true);
+        
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(cancelEvent -> {
+            converter.cancel();
+            cancelButton.setEnabled(false);
+            cancelButton.setText("Cancelling...");
+        });
+        
+        JPanel southPanel = new JPanel(new BorderLayout(5, 5));
+        southPanel.add(progressBar, BorderLayout.CENTER);
+        southPanel.add(cancelButton, BorderLayout.SOUTH);
+        
+        progressPanel.add(totalsLabel, BorderLayout.NORTH);
+        progressPanel.add(new JScrollPane(statusList), BorderLayout.CENTER);
+        progressPanel.add(southPanel, BorderLayout.SOUTH);
+        progressDialog.add(progressPanel);
+        
+        Runnable refresh = () -> {
+            for (int i = 0; i < files.size(); i++) {
+                String text = fileStatus.get(i);
+                if (text != null && !text.equals(statusModel.get(i))) statusModel.set(i, text);
+            }
+            totalsLabel.setText(totals.get());
+            progressBar.setValue(filesDone.get());
+        };
+        Timer refreshTimer = new Timer(250, e -> refresh.run());
+        
+        SwingWorker<java.util.List<BatchConverter.Result>, Void> worker =
+            new SwingWorker<java.util.List<BatchConverter.Result>, Void>() {
+                @Override
+                protected java.util.List<BatchConverter.Result> doInBackground() throws Exception {
+                    return converter.run();
+                }
+                
+                @Override
+                protected void done() {
+                    refreshTimer.stop();
+                    refresh.run();
+                    progressDialog.dispose();
+                    
+                    java.util.List<BatchConverter.Result> results;
+                    try {
+                        results = get();
+                    } catch (Exception ex) {
+                        JOptionPane.showMessageDialog(frame, "Batch processing failed: " + createErrorMessage(ex), "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    
+                    int converted = 0;
+                    int canceled = 0;
+                    StringBuilder failed = new StringBuilder();
+                    for (BatchConverter.Result r : results) {
+                        if (r.status == BatchConverter.Status.DONE) {
+                            converted++;
+                            for (java.nio.file.Path output : r.outputs) {
+                                File processedFile = output.toFile();
+                                if (outputFilesModel.contains(processedFile)) {
+                                    outputFilesModel.removeElement(processedFile);
+                                }
+                                outputFilesModel.addElement(processedFile);
+                            }
+                        } else if (r.status == BatchConverter.Status.CANCELLED) {
+                            canceled++;
+                        } else {
+                            failed.append("\n• ").append(r.input.getFileName()).append(": ").append(createErrorMessage(r.error));
+                        }
+                    }
+                    
+                    String message = converted + " of " + results.size() + " files converted.\n" + totals.get();
+                    if (canceled > 0) message += "\n" + canceled + " file(s) canceled.";
+                    if (failed.length() > 0) message += "\n\nFailed:" + failed;
+                    JOptionPane.showMessageDialog(frame, message, "Batch Complete",
+                        failed.length() > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+                }
+            };
+        
+        refreshTimer.start();
+        worker.execute();
+        progressDialog.setVisible(true);
+    }
+
     /**
      * Shows a temporary message that auto-dismisses after 3 seconds
      * @param parent parent frame
@@ -1,20 +1,18 @@
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.streaming.SXSSFSheet;
-import org.apache.poi.xssf.streaming.SXSSFWorkbook;
-
 import javax.xml.stream.*;
-import javax.xml.stream.events.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.text.NumberFormat;
-import java.time.*;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * XmlParser - improved with:
  *  - cooperative cancellation (cancel())
- *  - simple progress callback (ProgressListener)
+ *  - progress callback (ProgressListener) with byte-based Progress updates
  *  - robust try/finally cleanup to avoid leaving temporary artifacts
  *  - atomic final write via temp file + Files.move(... ATOMIC_MOVE)
  *
@@ -25,14 +23,122 @@ public class XmlParser {
 
     public interface ProgressListener {
         void onProgress(String message);
+
+        /**
+         * Structured progress of the running phase, at most every
+         * ProgressMeter.DEFAULT_INTERVAL_MILLIS. The same update is then passed to
+         * onProgress(String) as a message.
+         */
+        default void onProgress(Progress progress) { }
     }
 
-    // Date format used in XML (dd.MM.yyyy)
-    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
-    private static final Locale TURKISH_LOCALE = new Locale("tr", "TR");
+    /**
+     * How far processFile has got: the input position reached in the current phase, the row
+     * count and the rates since the phase started.
+     */
+    public static final class Progress {
+
+        public enum Phase {
+            /** Header pass (or looking for new vouchers in an incremental run) */
+            SCANNING,
+            /** Second pass: rows are validated and written */
+            CONVERTING,
+            /** Closing the output files; no byte progress */
+            FINISHING
+        }
+
+        public final Phase phase;
+        public final long bytesRead;
+        public final long totalBytes;
+        public final long rows; // rows written so far, 0 while scanning
+        public final double rowsPerSecond;
+        public final double mbPerSecond;
+        public final long etaMillis; // time left in this phase, -1 while unknown
 
-    // Style cache key -> CellStyle
-    private final Map<String, CellStyle> styleCache = new HashMap<>();
+        Progress(Phase phase, long bytesRead, long totalBytes, long rows, double rowsPerSecond, double mbPerSecond,
+                 long etaMillis) {
+            this.phase = phase;
+            this.bytesRead = bytesRead;
+            this.totalBytes = totalBytes;
+            this.rows = rows;
+            this.rowsPerSecond = rowsPerSecond;
+            this.mbPerSecond = mbPerSecond;
+            this.etaMillis = etaMillis;
+        }
+
+        /**
+         * @return the share of the input read in this phase, 0 to 1
+         */
+        public double fraction() {
+            return totalBytes > 0 ? Math.min(1.0, (double) bytesRead / totalBytes) : 0;
+        }
+
+        /**
+         * @return a status line such as "Converted 120000 rows: 45% at 38.2 MB/s, 0:12 left"
+         */
+        @Override
+        public String toString() {
+            if (phase == Phase.FINISHING) return "Finalizing output...";
+            StringBuilder sb = new StringBuilder(phase == Phase.SCANNING
+                    ? "Analyzing XML structure" : "Converted " + rows + " rows");
+            sb.append(": ").append((int) (fraction() * 100)).append('%');
+            if (etaMillis >= 0) {
+                // Rates are only shown once they are steady enough for a time estimate
+                sb.append(String.format(Locale.ROOT, " at %.1f MB/s", mbPerSecond));
+                if (phase == Phase.CONVERTING) sb.append(String.format(Locale.ROOT, ", %.0f rows/s", rowsPerSecond));
+                sb.append(", ").append(ProgressMeter.formatDuration(etaMillis)).append(" left");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Output file format. CSV and JSONL are written without building a workbook; their
+     * rejected rows go to a *_rejected.csv sidecar (see RejectLog).
+     */
+    public enum OutputFormat {
+        XLSX("xlsx"), CSV("csv"), JSONL("jsonl");
+
+        private final String extension;
+
+        OutputFormat(String extension) {
+            this.extension = extension;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+
+    /**
+     * What happens when an xlsx export has more rows than fit on one sheet (see setRowsPerPart).
+     */
+    public enum Rollover {
+        /** Continue on Data_2, Data_3, ... in the same workbook */
+        SHEETS,
+        /** Continue in report_out_2.xlsx, report_out_3.xlsx, ..., each written on its own thread */
+        WORKBOOKS
+    }
+
+    // Readers are created per pass (or per voucher when parsing in parallel); the factory
+    // itself is configured once. Reader creation is synchronized, see newStreamReader.
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+
+    // Target size of one parallel parse task (a run of consecutive vouchers)
+    private static final long PARALLEL_CHUNK_BYTES = 4L * 1024 * 1024;
+
+    // Input converted between two checkpoints of a resumable conversion
+    private static final long CHECKPOINT_INTERVAL_BYTES = 64L * 1024 * 1024;
+
+    // Heap the shared-strings table may use before new strings are written inline
+    private static final long SHARED_STRINGS_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    // Process-wide counters and phase timers (see ConversionMetrics)
+    private final ConversionMetrics metrics = ConversionMetrics.shared();
+
+    // Number and date parsing for validation and cell typing; rows are written on a single thread
+    private final FastNumberParser numberParser = new FastNumberParser();
+    private final FastDateParser dateParser = new FastDateParser();
 
     // Cancellation support
     private volatile boolean isCanceled = false;
@@ -40,29 +146,201 @@ public class XmlParser {
     // Optional progress callback (null if not used)
     private ProgressListener listener;
 
+    // Input position and row count of the running processFile, reported to the listener
+    private ProgressMeter meter = new ProgressMeter(null, 0, ProgressMeter.DEFAULT_INTERVAL_MILLIS);
+    // Elements enclosing the vouchers, from the last chunked pass over the whole input
+    private List<String> voucherParents;
+    // Fingerprints of the input up to each checkpoint of the current conversion
+    private ConversionCheckpoint.PrefixDigest inputDigest;
+
+    // Parse GL_VOUCHER blocks on the ForkJoin common pool (see setParallelParsing)
+    private boolean parallelParsing = false;
+
+    // Use the byte-level VoucherScanner instead of StAX where possible (see setFastScan)
+    private boolean fastScan = false;
+
+    // Write xlsx output with DirectXlsxWriter instead of SXSSF (see setDirectXlsx)
+    private boolean directXlsx = false;
+
+    // Deduplicate Data sheet text through a shared-strings table (see setSharedStrings)
+    private boolean sharedStrings = false;
+
+    // gzip CSV/JSONL output (see setCompressOutput)
+    private boolean compressOutput = false;
+
+    // Sheet/workbook rollover of xlsx output (see setRollover, setRowsPerPart)
+    private Rollover rollover = Rollover.SHEETS;
+    private int rowsPerPart = WorkbookPart.MAX_ROWS_PER_SHEET;
+
+    // Keep a checkpoint to continue interrupted conversions from (see setResumable)
+    private boolean resumable = false;
+
+    // Reuse the output of an identical earlier conversion (see setUseCache)
+    private boolean useCache = false;
+
+    // Convert only the vouchers appended since the last run (see setIncremental)
+    private boolean incremental = false;
+
+    // Rules file set via setValidationRulesFile; null means ValidationRules.locate()
+    private Path validationRulesFile;
+
     private Path xmlPath;
-    private Path outXlsxPath;
-    private Path csvOutPath;
+    private Path outXlsxPath; // The output file, whatever the format
+    private OutputFormat format;
+    private List<Path> outputPaths; // Every file written, set when processFile completes
 
     public XmlParser(Path input, boolean csvExport) throws Exception {
+        this(input, csvExport ? OutputFormat.CSV : OutputFormat.XLSX);
+    }
+
+    public XmlParser(Path input, OutputFormat format) throws Exception {
         this.xmlPath = input;
         String inputFileName = input.getFileName().toString();
         String nameWithoutExtension = inputFileName.contains(".") ? inputFileName.substring(0, inputFileName.lastIndexOf('.')) : inputFileName;
-        String outputFileName = nameWithoutExtension + "_out." + (csvExport ? "csv" : "xlsx");
+        String outputFileName = nameWithoutExtension + "_out." + format.extension();
         this.outXlsxPath = input.getParent().resolve(outputFileName);
-        this.csvOutPath = csvExport ? this.outXlsxPath : null; // When CSV is enabled, outXlsxPath actually points to CSV file
+        this.format = format;
     }
 
     public XmlParser(Path input, Path outputPath, boolean csvExport) throws Exception {
+        this(input, outputPath, csvExport ? OutputFormat.CSV : OutputFormat.XLSX);
+    }
+
+    // outputPath should already have the format's extension
+    public XmlParser(Path input, Path outputPath, OutputFormat format) throws Exception {
         this.xmlPath = input;
         this.outXlsxPath = outputPath;
-        this.csvOutPath = csvExport ? outputPath : null; // When CSV is enabled, outputPath should already have .csv extension
+        this.format = format;
     }
 
     public void setProgressListener(ProgressListener l) {
         this.listener = l;
     }
 
+    /**
+     * Enables parsing independent GL_VOUCHER blocks in parallel. The input is memory-mapped,
+     * split at voucher boundaries by a byte scan and the chunks are parsed on the ForkJoin
+     * common pool; rows are still written in document order, so the output is identical to
+     * the sequential path. Inputs the scan cannot split safely are parsed sequentially.
+     */
+    public void setParallelParsing(boolean parallel) {
+        this.parallelParsing = parallel;
+    }
+
+    /**
+     * Enables the byte-level scanner for the fixed GL_VOUCHER &gt; TRANSACTIONS &gt;
+     * TRANSACTION &gt; FIELD shape of machine-generated exports. It works directly on the
+     * memory-mapped file and decodes only the field values that are emitted. Inputs using
+     * constructs it does not support (DTDs, CDATA, namespaces, non-UTF-8 encodings) are
+     * detected during the header pass and parsed with StAX instead. Combines with
+     * setParallelParsing.
+     */
+    public void setFastScan(boolean fastScan) {
+        this.fastScan = fastScan;
+    }
+
+    /**
+     * Writes xlsx output with DirectXlsxWriter: the sheet XML is streamed straight into the
+     * output zip instead of going through POI's Row/Cell objects and SXSSF temp files. The
+     * workbook has the same sheets, values and styles. Ignored for CSV and JSONL output.
+     */
+    public void setDirectXlsx(boolean directXlsx) {
+        this.directXlsx = directXlsx;
+    }
+
+    /**
+     * Writes Data sheet text through a deduplicated shared-strings table instead of inline
+     * strings, which makes ledgers with many repeated codes and descriptions much smaller.
+     * The table is bounded (SHARED_STRINGS_BUDGET_BYTES); once it is full, values not yet in
+     * it are written inline. Shared strings are written by DirectXlsxWriter, so this implies
+     * setDirectXlsx for xlsx output. Ignored for CSV and JSONL output.
+     */
+    public void setSharedStrings(boolean sharedStrings) {
+        this.sharedStrings = sharedStrings;
+    }
+
+    /**
+     * Writes CSV and JSONL output gzip-compressed, as outputPath + ".gz". Blocks are deflated
+     * on all cores (see ParallelGzipWriter), so compression costs little wall time. Ignored
+     * for xlsx output, which is a zip file already.
+     */
+    public void setCompressOutput(boolean compressOutput) {
+        this.compressOutput = compressOutput;
+    }
+
+    /**
+     * Sets where xlsx output continues once rowsPerPart data rows are written: on further
+     * sheets of the same workbook (the default) or in further workbooks. Ignored for CSV and
+     * JSONL output.
+     */
+    public void setRollover(Rollover rollover) {
+        this.rollover = rollover;
+    }
+
+    /**
+     * Data rows per sheet (Rollover.SHEETS) or per workbook (Rollover.WORKBOOKS). Defaults to
+     * and is capped at the 1,048,575 rows that fit below the header of an Excel sheet.
+     */
+    public void setRowsPerPart(int rowsPerPart) {
+        this.rowsPerPart = Math.max(1, Math.min(rowsPerPart, WorkbookPart.MAX_ROWS_PER_SHEET));
+    }
+
+    /**
+     * Validates rows with the rules in the given properties file (see ValidationRules) instead
+     * of the validation.properties found in the working directory or the built-in defaults.
+     */
+    public void setValidationRulesFile(Path rulesFile) {
+        this.validationRulesFile = rulesFile;
+    }
+
+    /**
+     * Makes the conversion resumable. While it runs, a checkpoint next to the output (see
+     * getCheckpointPath) records at GL_VOUCHER boundaries how far the input has been
+     * converted: every CHECKPOINT_INTERVAL_BYTES of input, and for split xlsx whenever a
+     * workbook is completed. If the conversion is cancelled or fails,
+     * the partial output and the checkpoint are kept, and the next resumable run of the same
+     * input with the same options continues from there instead of starting over: CSV and
+     * JSONL output (gzip too) is cut back to the checkpoint and appended to, and split xlsx
+     * exports (Rollover.WORKBOOKS) keep the workbooks that were completed. Single-workbook
+     * xlsx output cannot be resumed and always starts over.
+     *
+     * Checkpoints need the voucher offsets of the chunked parser, so resumable conversions
+     * use it even without setParallelParsing; inputs it cannot split are converted without
+     * checkpoints.
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * Looks the conversion up in the shared ConversionCache first: if the same input content
+     * was converted before with the same options and file names, its files are linked into
+     * place instead of converting again. Outputs of completed conversions are added to the
+     * cache. Cache problems are logged and never fail a conversion. Incremental conversions
+     * (see setIncremental) do not use the cache, their output grows with the input.
+     */
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    /**
+     * Converts inputs that keep growing, such as exports that get further vouchers appended,
+     * without starting over each time. The checkpoint (see getCheckpointPath) is kept after
+     * the conversion completes and records where the last converted GL_VOUCHER ends. The next
+     * incremental run checks that the input up to there is unchanged, parses only the
+     * vouchers behind it and appends their rows: to the CSV/JSONL output and reject log, as a
+     * further workbook (report_out_2.xlsx, ...) for xlsx output, or after the last workbook of
+     * a split export. If the converted part of the input was changed, the new vouchers bring
+     * fields the output has no column for, or the options differ, the whole input is converted
+     * again.
+     *
+     * Like setResumable, this needs the chunked parser; CSV/JSONL and split xlsx conversions
+     * are also resumable.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
     private void publish(String msg) {
         if (listener != null) {
             try {
@@ -71,8 +349,32 @@ public class XmlParser {
         }
     }
 
+    /**
+     * @return the file the output is written to; with setCompressOutput this is the .gz file
+     */
     public Path getOutputPath() {
-        return this.outXlsxPath;
+        return isCompressed() ? outXlsxPath.resolveSibling(outXlsxPath.getFileName() + ".gz") : outXlsxPath;
+    }
+
+    /**
+     * @return the files written by processFile: the output path, followed by the further
+     *         workbooks of a split export; empty before processFile has completed
+     */
+    public List<Path> getOutputPaths() {
+        return outputPaths != null ? outputPaths : Collections.<Path>emptyList();
+    }
+
+    /**
+     * @return the checkpoint file of a resumable conversion; it exists while the conversion
+     *         runs or after it was interrupted, and is removed once it completes unless the
+     *         conversion is incremental
+     */
+    public Path getCheckpointPath() {
+        return ConversionCheckpoint.pathFor(outXlsxPath);
+    }
+
+    private boolean isCompressed() {
+        return compressOutput && format != OutputFormat.XLSX;
     }
 
     public void cancel() {
@@ -91,177 +393,386 @@ public class XmlParser {
         System.err.println("[ERR] " + s);
     }
 
-    private CellStyle getStyle(Workbook wb, boolean blue, boolean isDate) {
-        String key = (blue ? "blue" : "white") + (isDate ? "|date" : "|reg");
-        if (styleCache.containsKey(key)) return styleCache.get(key);
-        CellStyle style = wb.createCellStyle();
-        if (blue) {
-            style.setFillForegroundColor(IndexedColors.PALE_BLUE.getIndex());
-            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        } else {
-            style.setFillForegroundColor(IndexedColors.WHITE.getIndex());
-            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        }
-        style.setAlignment(HorizontalAlignment.CENTER);
-        Font f = wb.createFont();
-        f.setColor(IndexedColors.BLACK.getIndex());
-        style.setFont(f);
+    /**
+     * ElementCursor over a StAX XMLStreamReader. Element text is collected in one reusable
+     * buffer; only the final trimmed value is materialized as a String.
+     */
+    private final class StaxCursor implements ElementCursor {
+        private final XMLStreamReader reader;
+        private final StringBuilder sb = new StringBuilder(256);
 
-        if (isDate) {
-            short df = wb.createDataFormat().getFormat("dd.MM.yyyy");
-            style.setDataFormat(df);
+        StaxCursor(XMLStreamReader reader) {
+            this.reader = reader;
         }
 
-        styleCache.put(key, style);
-        return style;
-    }
+        @Override
+        public int next() throws XMLStreamException {
+            return reader.hasNext() ? reader.next() : XMLStreamConstants.END_DOCUMENT;
+        }
 
-    private Double tryParseNumber(String raw) {
-        if (raw == null || raw.trim().isEmpty()) return null;
-        String trimmed = raw.trim().replace("\u00A0", "").replaceAll("\\s+", "");
-        NumberFormat nf = NumberFormat.getInstance(TURKISH_LOCALE);
-        try {
-            Number n = nf.parse(trimmed);
-            return n.doubleValue();
-        } catch (Exception ignored) { }
-        try {
-            String normalized = trimmed.replace(",", ".");
-            return Double.parseDouble(normalized);
-        } catch (Exception ignored) { }
-        return null;
-    }
+        @Override
+        public String localName() {
+            return reader.getLocalName();
+        }
 
-    private Date tryParseDate(String raw) {
-        if (raw == null || raw.trim().isEmpty()) return null;
-        String t = raw.trim();
-        try {
-            LocalDate ld = LocalDate.parse(t, DATE_FORMAT);
-            Instant inst = ld.atStartOfDay(ZoneId.systemDefault()).toInstant();
-            return Date.from(inst);
-        } catch (Exception e) {
-            return null;
+        /**
+         * Reads the text of the element the cursor is positioned on (START_ELEMENT) up to its
+         * matching end tag, including the text of any nested elements.
+         */
+        @Override
+        public String readElementText() throws XMLStreamException {
+            String localName = reader.getLocalName();
+            String namespace = reader.getNamespaceURI();
+            sb.setLength(0);
+            while (reader.hasNext()) {
+                if (isCanceled) throw new XMLStreamException("Canceled");
+                int event = reader.next();
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE) {
+                    sb.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                } else if (event == XMLStreamConstants.END_ELEMENT && isSameElement(localName, namespace)) {
+                    break;
+                }
+            }
+            int start = 0;
+            int end = sb.length();
+            while (start < end && sb.charAt(start) <= ' ') start++;
+            while (end > start && sb.charAt(end - 1) <= ' ') end--;
+            return sb.substring(start, end);
         }
-    }
 
-    private String readElementText(XMLEventReader reader, StartElement start) throws XMLStreamException {
-        StringBuilder sb = new StringBuilder();
-        while (reader.hasNext()) {
-            if (isCanceled) throw new XMLStreamException("Canceled");
-            XMLEvent ev = reader.nextEvent();
-            if (ev.isCharacters()) {
-                sb.append(ev.asCharacters().getData());
-            } else if (ev.isEndElement()) {
-                EndElement end = ev.asEndElement();
-                if (end.getName().equals(start.getName())) {
+        // Consumes an element like readElementText but without collecting its text
+        @Override
+        public void skipElement() throws XMLStreamException {
+            String localName = reader.getLocalName();
+            String namespace = reader.getNamespaceURI();
+            while (reader.hasNext()) {
+                if (isCanceled) throw new XMLStreamException("Canceled");
+                if (reader.next() == XMLStreamConstants.END_ELEMENT && isSameElement(localName, namespace)) {
                     break;
                 }
             }
         }
-        return sb.toString().trim();
+
+        private boolean isSameElement(String localName, String namespace) {
+            return localName.equals(reader.getLocalName()) && Objects.equals(namespace, reader.getNamespaceURI());
+        }
     }
 
     /**
      * Top-level processing method.
      * This method tries to be robust: it publishes progress messages, checks cancellation
      * frequently and ensures temporary artifacts are cleaned up on failure or cancellation.
+     *
+     * The input is read twice so memory stays flat regardless of file size: a cheap first
+     * pass only discovers the header set, the second pass hands every transaction straight
+     * to the Excel/CSV writer as soon as its GL_VOUCHER is complete.
      */
     public void processFile() throws Exception {
-        boolean csvExport = (csvOutPath != null);
+        metrics.conversionStarted();
+        long allocatedBefore = ConversionMetrics.threadAllocatedBytes();
+        boolean ok = false;
+        try {
+            convert();
+            ok = true;
+        } finally {
+            long allocated = allocatedBefore < 0 ? -1 : ConversionMetrics.threadAllocatedBytes() - allocatedBefore;
+            metrics.conversionEnded(ok, ok ? sizeOf(Collections.singletonList(xmlPath)) : 0,
+                    ok ? sizeOf(getOutputPaths()) : 0, allocated);
+        }
+    }
+
+    private static long sizeOf(List<Path> files) {
+        long bytes = 0;
+        for (Path f : files) {
+            try {
+                bytes += Files.size(f);
+            } catch (IOException ignore) { }
+        }
+        return bytes;
+    }
+
+    private void convert() throws Exception {
+        boolean csvExport = (format == OutputFormat.CSV);
+        boolean jsonExport = (format == OutputFormat.JSONL);
         publish("Starting: " + xmlPath.getFileName());
-        log("Processing " + xmlPath + " -> " + outXlsxPath);
+        log("Processing " + xmlPath + " -> " + getOutputPath());
+        meter = new ProgressMeter(listener, Files.size(xmlPath), ProgressMeter.DEFAULT_INTERVAL_MILLIS);
+
+        ValidationRules rules = validationRulesFile != null
+                ? ValidationRules.load(validationRulesFile)
+                : ValidationRules.locate();
+
+        // An input converted before with the same options is served from the cache
+        String cacheKey = null;
+        if (useCache && !incremental) {
+            try {
+                publish("Checking conversion cache...");
+                ConversionCache cache = ConversionCache.shared();
+                cacheKey = cache.key(xmlPath, describeOptions(rules) + "|" + xmlPath.getFileName()
+                        + "|" + outXlsxPath.getFileName());
+                List<Path> cached = cache.restore(cacheKey, outXlsxPath);
+                if (cached != null) {
+                    Files.deleteIfExists(getCheckpointPath());
+                    List<Path> outputs = new ArrayList<>(cached);
+                    // A sidecar of another input version must not survive a clean cached result
+                    if (!outputs.remove(RejectLog.pathFor(outXlsxPath))) Files.deleteIfExists(RejectLog.pathFor(outXlsxPath));
+                    if (format == OutputFormat.XLSX) WorkbookSplitter.removePartsAfter(outXlsxPath, outputs.size());
+                    outputPaths = outputs;
+                    publish("Completed: reused the output of an earlier conversion");
+                    log("Input unchanged since an earlier conversion, reused " + cached);
+                    return;
+                }
+            } catch (IOException e) {
+                err("Conversion cache not available: " + e.getMessage());
+                cacheKey = null;
+            }
+        }
 
-        // First pass: collect fields and rows
-        publish("Analyzing XML structure...");
+        // A resumable conversion picks up the checkpoint an interrupted run of the same input
+        // and options left behind, an incremental one also the checkpoint of its last completed
+        // run; any other checkpoint for this output is stale
+        Path checkpointPath = getCheckpointPath();
+        boolean checkpoints = incremental || (resumable && (format != OutputFormat.XLSX || rollover == Rollover.WORKBOOKS));
+        ConversionCheckpoint checkpoint = null;
+        ConversionCheckpoint resume = null;
+        String identity = null;
+        if (checkpoints) {
+            inputDigest = new ConversionCheckpoint.PrefixDigest(xmlPath);
+            identity = ConversionCheckpoint.identity(xmlPath, describeOptions(rules), incremental);
+            resume = ConversionCheckpoint.load(checkpointPath, identity);
+            if (resume != null && !canResume(resume)) {
+                log("Checkpoint no longer matches the input or output, converting from the start");
+                resume = null;
+            }
+            if (resume == null) Files.deleteIfExists(checkpointPath);
+            checkpoint = resume != null ? resume : new ConversionCheckpoint(checkpointPath, identity);
+        } else {
+            if (resumable) log("Single-workbook Excel output cannot be resumed, converting without checkpoints");
+            Files.deleteIfExists(checkpointPath);
+        }
+
+        // An incremental run only reads the vouchers behind the checkpoint. Their fields must
+        // all have a column in the existing output, otherwise the whole input is converted again.
+        boolean fast = fastScan;
+        long scanStart = System.nanoTime();
+        if (resume != null && incremental) {
+            publish("Looking for new vouchers...");
+            Set<String> tailFields = new LinkedHashSet<>();
+            long tailRows = -1;
+            while (tailRows < 0) {
+                try {
+                    meter.start(Progress.Phase.SCANNING, resume.inputOffset, 0);
+                    tailRows = parseXmlChunked(xmlPath, tailFields, null, null, parallelParsing, fast,
+                            resume.inputOffset, resume.vouchers, resume.voucherParents);
+                } catch (VoucherSplitter.UnsupportedLayoutException | XMLStreamException e) {
+                    tailFields.clear();
+                    if (!fast) {
+                        log("New vouchers cannot be appended (" + e.getMessage() + ")");
+                        break;
+                    }
+                    fast = false;
+                }
+            }
+            if (tailRows >= 0 && !resume.headers.containsAll(tailFields)) {
+                log("New vouchers have fields the output has no column for");
+                tailRows = -1;
+            }
+            if (tailRows < 0) {
+                log("Converting " + xmlPath.getFileName() + " again from the start");
+                Files.deleteIfExists(checkpointPath);
+                resume = null;
+                checkpoint = new ConversionCheckpoint(checkpointPath, identity);
+            } else if (tailRows == 0) {
+                outputPaths = outputsUpTo(resume.completedParts);
+                publish("Completed: no new data since the last conversion");
+                log("No new vouchers in " + xmlPath.getFileName() + " after byte " + resume.inputOffset);
+                return;
+            }
+        }
+        long dataRowsBefore = resume != null ? resume.dataRows : 0;
+        long rejectedRowsBefore = resume != null ? resume.rejectedRows : 0;
+        int partsBefore = resume != null ? resume.completedParts : 0;
+
+        // First pass: collect fields only
+        // The requested fast paths are tried first. The header pass reads every voucher, so if
+        // the input uses something they cannot handle we find out here, before writing anything,
+        // and step back: fast scan -> chunked StAX (when parallel or resumable) -> sequential StAX.
+        // A resumed conversion takes the fields from its checkpoint instead.
         Set<String> allFields = new LinkedHashSet<>();
-        List<Map<String, String>> allRows = new ArrayList<>();
-        parseXmlToRows(xmlPath, allFields, allRows);
+        boolean chunked = parallelParsing || fastScan || checkpoints;
+        long rowCount = -1;
+        if (resume != null) {
+            allFields.addAll(resume.headers);
+            publish((incremental ? "Appending after " : "Resuming after ") + (resume.dataRows + resume.rejectedRows) + " rows...");
+            log((incremental ? "Appending new vouchers of " : "Resuming ") + xmlPath.getFileName() + " at byte "
+                    + resume.inputOffset + " after " + resume.vouchers + " vouchers");
+        } else {
+            publish("Analyzing XML structure...");
+        }
+        while (resume == null && rowCount < 0) {
+            try {
+                meter.start(Progress.Phase.SCANNING, 0, 0);
+                rowCount = chunked
+                        ? parseXmlChunked(xmlPath, allFields, null, null, parallelParsing, fast, 0, 0, null)
+                        : parseXml(xmlPath, allFields, null, null);
+            } catch (VoucherSplitter.UnsupportedLayoutException | XMLStreamException e) {
+                if (!chunked) throw e;
+                log((fast ? "Fast scan" : parallelParsing ? "Parallel parsing" : "Checkpointing")
+                        + " not possible (" + e.getMessage() + "), falling back");
+                allFields.clear();
+                if (fast) {
+                    fast = false;
+                    chunked = parallelParsing || checkpoints;
+                } else {
+                    chunked = false;
+                    checkpoint = null;
+                }
+            }
+        }
+
+        metrics.add(ConversionMetrics.Phase.SCAN, System.nanoTime() - scanStart);
 
         if (isCanceled) {
             publish("Cancelled during scan");
             throw new InterruptedException("Cancelled");
         }
 
-        if (allRows.isEmpty()) {
+        if (rowCount == 0) {
             publish("No data found in XML");
             log("No transactions found in XML file");
             return;
         }
 
-        List<String> headers = new ArrayList<>(allFields);
+        ColumnIndex columns = new ColumnIndex(allFields);
+        List<String> headers = columns.names();
+        if (checkpoint != null && resume == null) {
+            checkpoint.headers = headers;
+            checkpoint.voucherParents = voucherParents;
+        }
 
         // Resources we must clean up
-        Workbook wb = null;
-        BufferedWriter csvWriter = null;
-        Path tmpXlsx = null;
-        Path tmpCsv = null;
-        Sheet sheet = null;
-        Sheet rejectedSheet = null;
+        WorkbookPart workbook = null;
+        WorkbookSplitter splitter = null;
+        CsvFileWriter csvWriter = null;
+        JsonLinesWriter jsonWriter = null;
+        RejectLog rejectLog = null;
+        Path tmpText = null;
+        String sourceFile = xmlPath.getFileName().toString();
+        boolean completed = false;
 
         try {
             if (csvExport) {
+                // No workbook at all: rows go straight from the validator to the CSV file
                 publish("Creating CSV file...");
-                // For CSV export, we only need a minimal workbook for validation logic
-                wb = new SXSSFWorkbook(100);
-                sheet = wb.createSheet("Data");
-                rejectedSheet = wb.createSheet("Rejected");
-                
-                createHeaderRow(sheet, headers, wb);
-                createRejectedHeader(rejectedSheet);
-                
-                publish("Setting up CSV export...");
-                csvWriter = prepareCsvWriter(csvOutPath, outXlsxPath, headers);
-                tmpCsv = csvOutPath;
+                tmpText = getOutputPath();
+                csvWriter = new CsvFileWriter(tmpText, isCompressed(), resume != null ? resume.outputBytes : 0);
+                if (resume == null) csvWriter.writeRow(headers);
+                rejectLog = new RejectLog(RejectLog.pathFor(outXlsxPath), sourceFile,
+                        RejectLog.DEFAULT_MAX_ROWS, Files.size(xmlPath));
+                if (resume != null) {
+                    rejectLog.resume(resume.rejectBytes, resume.rejectsLogged, resume.rejectsDropped, resume.reasonCounts);
+                } else {
+                    rejectLog.clear();
+                }
+            } else if (jsonExport) {
+                publish("Creating JSON Lines file...");
+                tmpText = getOutputPath();
+                jsonWriter = new JsonLinesWriter(tmpText, headers, isCompressed(), resume != null ? resume.outputBytes : 0);
+                rejectLog = new RejectLog(RejectLog.pathFor(outXlsxPath), sourceFile,
+                        RejectLog.DEFAULT_MAX_ROWS, Files.size(xmlPath));
+                if (resume != null) {
+                    rejectLog.resume(resume.rejectBytes, resume.rejectsLogged, resume.rejectsDropped, resume.reasonCounts);
+                } else {
+                    rejectLog.clear();
+                }
+            } else if (rollover == Rollover.WORKBOOKS) {
+                publish("Creating Excel workbooks...");
+                splitter = new WorkbookSplitter(outXlsxPath, headers, sourceFile, rowsPerPart,
+                        directXlsx || sharedStrings, sharedStrings ? SHARED_STRINGS_BUDGET_BYTES : 0);
+                splitter.setKeepCompletedParts(checkpoint != null);
+                if (resume != null) splitter.resumeAfter(resume.completedParts);
             } else {
                 publish("Creating Excel workbook...");
-                wb = new SXSSFWorkbook(100);
-                sheet = wb.createSheet("Data");
-                if (sheet instanceof SXSSFSheet) ((SXSSFSheet) sheet).trackAllColumnsForAutoSizing();
-                rejectedSheet = wb.createSheet("Rejected");
-
-                createHeaderRow(sheet, headers, wb);
-                createRejectedHeader(rejectedSheet);
+                // An incremental run writes the new rows to a further workbook next to the earlier ones
+                Path target = WorkbookSplitter.partPath(outXlsxPath, partsBefore + 1);
+                workbook = new WorkbookPart(target, headers, sourceFile, rowsPerPart, directXlsx || sharedStrings,
+                        sharedStrings ? new SharedStringTable(SHARED_STRINGS_BUDGET_BYTES) : null);
             }
 
+            // Second pass: parse, validate and write each row as it is read
             publish("Writing data rows...");
-            int dataRowIdx = 1;
-            int rejRowIdx = 1;
-            for (Map<String, String> rowData : allRows) {
-                if (isCanceled) throw new InterruptedException("Cancelled by user");
-                
-                // Validate row data before writing
-                String rejectionReason = validateRowData(rowData);
-                if (rejectionReason != null) {
-                    // Write to rejected sheet instead of main data
-                    writeRejectedRow(rejectedSheet, xmlPath, rowData, rejectionReason, rejRowIdx);
-                    rejRowIdx++;
+            RowWriter rowWriter = new RowWriter(columns, rules.compile(columns), csvWriter, jsonWriter, rejectLog,
+                    workbook, splitter, checkpoint);
+            meter.start(Progress.Phase.CONVERTING, resume != null ? resume.inputOffset : 0,
+                    dataRowsBefore + rejectedRowsBefore);
+            long passStart = System.nanoTime();
+            try {
+                if (resume != null) {
+                    rowWriter.resume(resume);
+                    parseXmlChunked(xmlPath, null, columns, rowWriter, parallelParsing, fast, resume.inputOffset, resume.vouchers,
+                            resume.voucherParents);
+                } else if (chunked) {
+                    parseXmlChunked(xmlPath, null, columns, rowWriter, parallelParsing, fast, 0, 0, null);
                 } else {
-                    // Write to main data sheet
-                    writeDataRow(sheet, rowData, headers, dataRowIdx, wb, csvWriter);
-                    dataRowIdx++;
-                }
-                
-                if (((dataRowIdx + rejRowIdx) % 500) == 0) {
-                    publish("Converted ~" + (dataRowIdx + rejRowIdx) + " rows...");
+                    parseXml(xmlPath, null, columns, rowWriter);
                 }
+            } finally {
+                // Whatever the rows did not spend in validation and writing went to parsing
+                metrics.add(ConversionMetrics.Phase.PARSE, System.nanoTime() - passStart - rowWriter.sampler.flush());
             }
 
-            if (csvExport) {
-                publish("Finalizing CSV file...");
+            meter.start(Progress.Phase.FINISHING, Files.size(xmlPath), rowWriter.dataRowIdx + rowWriter.rejRowIdx - 2);
+
+            // An incremental conversion saves where the input ends for the next run to append from
+            boolean keepCheckpoint = incremental && checkpoint != null;
+            if (csvExport || jsonExport) {
+                publish(csvExport ? "Finalizing CSV file..." : "Finalizing JSON Lines file...");
+                if (keepCheckpoint) rowWriter.saveFinalCheckpoint(0);
+                long flushStart = System.nanoTime();
                 if (csvWriter != null) {
-                    csvWriter.flush();
                     csvWriter.close();
                     csvWriter = null;
                 }
+                if (jsonWriter != null) {
+                    jsonWriter.close();
+                    jsonWriter = null;
+                }
+                rejectLog.close();
+                metrics.add(ConversionMetrics.Phase.FLUSH, System.nanoTime() - flushStart);
+                if (rejectLog.writtenPath() != null) {
+                    log("Rejected rows written to " + rejectLog.writtenPath());
+                    for (Map.Entry<String, Long> e : rejectLog.reasonCounts().entrySet()) {
+                        log("  " + e.getValue() + " x " + e.getKey());
+                    }
+                }
+                outputPaths = Collections.singletonList(getOutputPath());
+            } else if (splitter != null) {
+                publish("Finalizing Excel files...");
+                outputPaths = splitter.finish();
+                if (keepCheckpoint) rowWriter.saveFinalCheckpoint(outputPaths.size());
             } else {
                 publish("Finalizing Excel file...");
-                autosizeColumns(wb.getSheet("Data"), headers.size());
-                // write workbook atomically (to temp then move)
-                tmpXlsx = writeWorkbookAtomic(wb, outXlsxPath);
+                workbook.finish();
+                WorkbookSplitter.removePartsAfter(outXlsxPath, partsBefore + 1);
+                outputPaths = outputsUpTo(partsBefore + 1);
+                if (keepCheckpoint) rowWriter.saveFinalCheckpoint(outputPaths.size());
+            }
+            completed = true;
+            if (checkpoint != null && !keepCheckpoint) checkpoint.delete();
+            if (cacheKey != null) {
+                List<Path> produced = new ArrayList<>(outputPaths);
+                if (rejectLog != null && rejectLog.writtenPath() != null) produced.add(rejectLog.writtenPath());
+                try {
+                    ConversionCache.shared().store(cacheKey, produced);
+                } catch (IOException e) {
+                    err("Output not added to the conversion cache: " + e.getMessage());
+                }
             }
 
             // Log processing summary
-            int totalProcessed = dataRowIdx - 1; // -1 because we started at 1
-            int totalRejected = rejRowIdx - 1;
+            int totalProcessed = rowWriter.dataRowIdx - 1; // -1 because we started at 1
+            int totalRejected = rowWriter.rejRowIdx - 1;
             int totalRows = totalProcessed + totalRejected;
             
             if (totalRejected > 0) {
@@ -271,8 +782,14 @@ public class XmlParser {
                 publish("Completed: " + totalProcessed + " rows converted successfully");
                 log("Processing summary: All " + totalProcessed + " rows processed successfully");
             }
+            if (incremental && dataRowsBefore + rejectedRowsBefore > 0) {
+                log("Appended " + (totalProcessed - dataRowsBefore) + " valid and " + (totalRejected - rejectedRowsBefore)
+                        + " rejected rows from the new vouchers");
+            }
             
-            log((csvExport ? "CSV" : "Workbook") + " written to " + outXlsxPath);
+            for (Path written : outputPaths) {
+                log((csvExport ? "CSV" : jsonExport ? "JSON Lines" : "Workbook") + " written to " + written);
+            }
         } catch (InterruptedException ie) {
             // Propagate cancellation
             publish("Operation cancelled");
@@ -281,289 +798,635 @@ public class XmlParser {
             err("Processing failed: " + e.getMessage());
             throw e;
         } finally {
-            // Close CSV if still open and remove partial CSV if cancelled/failed
+            // Close CSV/JSONL if still open and remove the partial file if cancelled, unless a
+            // checkpoint was saved for it
+            boolean keepForResume = !completed && checkpoint != null && checkpoint.isSaved();
+            if (keepForResume) {
+                log("Progress saved in " + checkpointPath.getFileName() + ", converting again with resume enabled continues from there");
+            }
             try {
                 if (csvWriter != null) {
                     try { csvWriter.close(); } catch (Exception ignore) {}
                     csvWriter = null;
                 }
-                if (csvExport && tmpCsv != null && isCanceled) {
-                    try { Files.deleteIfExists(tmpCsv); } catch (Exception ignore) {}
+                if (jsonWriter != null) {
+                    try { jsonWriter.close(); } catch (Exception ignore) {}
+                    jsonWriter = null;
                 }
-            } catch (Exception ignore) {}
-
-            // Dispose SXSSF temporary files
-            try {
-                if (wb instanceof SXSSFWorkbook) {
-                    ((SXSSFWorkbook) wb).dispose();
+                if (tmpText != null && isCanceled && !keepForResume) {
+                    try { Files.deleteIfExists(tmpText); } catch (Exception ignore) {}
+                }
+                if (rejectLog != null) {
+                    if (isCanceled && !keepForResume) {
+                        rejectLog.discard();
+                    } else {
+                        try { rejectLog.close(); } catch (Exception ignore) {}
+                    }
                 }
             } catch (Exception ignore) {}
 
-            // If writeWorkbookAtomic failed to move and tmpXlsx exists, delete it
-            if (tmpXlsx != null && Files.exists(tmpXlsx)) {
-                try { Files.deleteIfExists(tmpXlsx); } catch (Exception ignore) {}
+            // Releases SXSSF/zip resources and removes temp files and unfinished parts
+            if (workbook != null) {
+                workbook.close();
+            }
+            if (splitter != null) {
+                splitter.close();
             }
         }
     }
 
     /**
-     * Validates row data and returns rejection reason if invalid, null if valid
+     * Receives the transactions of each completed GL_VOUCHER in document order.
+     */
+    private interface RowHandler {
+        /**
+         * @param voucher 1-based number of the row's GL_VOUCHER in the document
+         */
+        void onRow(TransactionRow row, long voucher) throws Exception;
+
+        /**
+         * Called by the chunked parser after the rows of each voucher.
+         *
+         * @param end input offset just behind the voucher
+         * @param vouchers vouchers completed up to end
+         */
+        default void onVouchersDone(long end, long vouchers) throws Exception { }
+    }
+
+    /**
+     * Validates each incoming row and writes it to the data sheet/CSV or the rejected sheet.
+     * With a checkpoint, the output is synced and the resume point saved at the voucher
+     * boundary after every CHECKPOINT_INTERVAL_BYTES of input, or for split xlsx after each
+     * workbook that is completed; incremental conversions save a last one at the end.
      */
-    private String validateRowData(Map<String, String> rowData) {
-        // Check if row is completely empty
-        boolean hasAnyData = false;
-        for (String value : rowData.values()) {
-            if (value != null && !value.trim().isEmpty()) {
-                hasAnyData = true;
-                break;
-            }
-        }
-        if (!hasAnyData) {
-            return "Empty row - no data found";
-        }
-        
-        // Check for required fields (common in accounting systems)
-        String[] requiredFields = {"ACCOUNT", "AMOUNT", "DATE"}; // Adjust based on your XML structure
-        for (String field : requiredFields) {
-            String value = rowData.get(field);
-            if (value == null || value.trim().isEmpty()) {
-                // Only reject if field exists in XML but is empty
-                if (rowData.containsKey(field)) {
-                    return "Missing required field: " + field;
+    private class RowWriter implements RowHandler {
+        private final ColumnIndex columns;
+        private final ValidationRules.Plan validation;
+        private final CsvFileWriter csvWriter;
+        private final JsonLinesWriter jsonWriter;
+        private final RejectLog rejectLog;
+        private final WorkbookPart workbook;
+        private final WorkbookSplitter splitter;
+        private final ColumnTypes types;
+        private final ConversionCheckpoint checkpoint;
+        final ConversionMetrics.RowSampler sampler = metrics.rowSampler();
+        int dataRowIdx = 1;
+        int rejRowIdx = 1;
+
+        // Resume state: the last completed voucher, where the last checkpoint was taken, rows of
+        // the first voucher that are already written and, for split xlsx, where each part
+        // started ({offset, vouchers, rows to skip, data rows, rejected rows}, by part number)
+        private long voucherEnd;
+        private long vouchersDone;
+        private long checkpointedAt;
+        private int skipRows;
+        private final List<long[]> partStarts = new ArrayList<>();
+
+        RowWriter(ColumnIndex columns, ValidationRules.Plan validation, CsvFileWriter csvWriter,
+                  JsonLinesWriter jsonWriter, RejectLog rejectLog, WorkbookPart workbook, WorkbookSplitter splitter,
+                  ConversionCheckpoint checkpoint) {
+            this.columns = columns;
+            this.validation = validation;
+            this.csvWriter = csvWriter;
+            this.jsonWriter = jsonWriter;
+            this.rejectLog = rejectLog;
+            this.workbook = workbook;
+            this.splitter = splitter;
+            this.types = new ColumnTypes(columns.size());
+            this.checkpoint = checkpoint;
+        }
+
+        /**
+         * Continues the counts of an interrupted conversion; the parse restarts at the
+         * checkpoint's input offset.
+         */
+        void resume(ConversionCheckpoint cp) {
+            dataRowIdx = (int) cp.dataRows + 1;
+            rejRowIdx = (int) cp.rejectedRows + 1;
+            voucherEnd = cp.inputOffset;
+            vouchersDone = cp.vouchers;
+            checkpointedAt = cp.inputOffset;
+            skipRows = cp.skipRows;
+            for (int i = 0; i < cp.completedParts; i++) partStarts.add(null);
+        }
+
+        @Override
+        public void onRow(TransactionRow rowData, long voucher) throws Exception {
+            if (isCanceled) throw new InterruptedException("Cancelled by user");
+            if (skipRows > 0) {
+                skipRows--; // in a workbook completed before the interruption
+                return;
+            }
+            int partsBefore = splitter != null ? splitter.partCount() : 0;
+            int dataBefore = dataRowIdx;
+            int rejBefore = rejRowIdx;
+
+            // Validate row data before writing; one row in every few is timed for the metrics
+            boolean timed = sampler.sample();
+            long validateStart = timed ? System.nanoTime() : 0;
+            String rejectionReason = validation.validate(rowData, dateParser, numberParser);
+            long writeStart = timed ? System.nanoTime() : 0;
+            if (rejectionReason != null) {
+                // Write to rejected sheet instead of main data; CSV/JSONL output has a sidecar file instead
+                if (rejectLog != null) {
+                    rejectLog.reject(voucher, rowData.position(), rejectionReason, rowData.describe(columns));
+                } else if (splitter != null) {
+                    splitter.rejected(rowData.describe(columns), rejectionReason);
+                } else {
+                    workbook.rejected(rowData.describe(columns), rejectionReason);
+                }
+                rejRowIdx++;
+                metrics.rowRejected();
+            } else {
+                // Write to main data sheet
+                if (csvWriter != null) {
+                    writeCsvRow(csvWriter, rowData, columns.size());
+                } else if (jsonWriter != null) {
+                    writeJsonRow(jsonWriter, rowData, types, validation, columns.size());
+                } else if (splitter != null) {
+                    splitter.row(rowData);
+                } else {
+                    workbook.row(rowData);
                 }
+                dataRowIdx++;
+                metrics.rowWritten();
             }
+            if (timed) sampler.sampled(writeStart - validateStart, System.nanoTime() - writeStart);
+            if (splitter != null && splitter.partCount() != partsBefore) {
+                partStarts.add(new long[] { voucherEnd, vouchersDone, rowData.position() - 1, dataBefore - 1, rejBefore - 1 });
+            }
+
+            meter.row();
         }
-        
-        // Validate date fields
-        for (Map.Entry<String, String> entry : rowData.entrySet()) {
-            String key = entry.getKey();
-            String value = entry.getValue();
-            
-            // Check if field name suggests it's a date
-            if (key.toLowerCase().contains("date") || key.toLowerCase().contains("tarih")) {
-                if (value != null && !value.trim().isEmpty()) {
-                    Date parsedDate = tryParseDate(value);
-                    if (parsedDate == null) {
-                        return "Invalid date format in field: " + key + " (value: " + value + ")";
-                    }
-                }
+
+        @Override
+        public void onVouchersDone(long end, long vouchers) throws Exception {
+            voucherEnd = end;
+            vouchersDone = vouchers;
+            if (checkpoint == null || workbook != null) return; // a single workbook is only complete at the end
+            if (splitter != null
+                    ? splitter.completedParts() > checkpoint.completedParts
+                    : end - checkpointedAt >= CHECKPOINT_INTERVAL_BYTES) {
+                saveCheckpoint();
+                checkpointedAt = end;
             }
-            
-            // Check if field name suggests it's an amount/number
-            if (key.toLowerCase().contains("amount") || key.toLowerCase().contains("tutar") || 
-                key.toLowerCase().contains("miktar") || key.toLowerCase().contains("balance")) {
-                if (value != null && !value.trim().isEmpty()) {
-                    // Skip if it's clearly text (contains letters other than currency symbols)
-                    if (value.matches(".*[a-zA-Z].*") && !value.matches(".*[TL|USD|EUR|\\$|€|₺].*")) {
-                        continue; // Skip text fields that happen to have "amount" in name
-                    }
-                    Double parsedNumber = tryParseNumber(value);
-                    if (parsedNumber == null && !value.trim().equals("0")) {
-                        return "Invalid number format in field: " + key + " (value: " + value + ")";
-                    }
-                }
+        }
+
+        private void saveCheckpoint() throws IOException {
+            if (splitter != null) {
+                // Only whole workbooks are kept: resume where the first unfinished one started
+                int completed = splitter.completedParts();
+                if (completed <= checkpoint.completedParts || completed >= partStarts.size()) return;
+                long[] next = partStarts.get(completed);
+                checkpoint.inputOffset = next[0];
+                checkpoint.vouchers = next[1];
+                checkpoint.skipRows = (int) next[2];
+                checkpoint.dataRows = next[3];
+                checkpoint.rejectedRows = next[4];
+                checkpoint.completedParts = completed;
+            } else {
+                recordPosition();
+                syncText();
             }
+            store();
+        }
+
+        /**
+         * Saves the end of the converted input as the starting point of the next incremental
+         * run. CSV/JSONL writers must still be open, xlsx parts already finished.
+         *
+         * @param parts xlsx workbooks written so far, 0 for CSV/JSONL
+         */
+        void saveFinalCheckpoint(int parts) throws IOException {
+            recordPosition();
+            checkpoint.skipRows = 0;
+            checkpoint.completedParts = parts;
+            if (rejectLog != null) syncText();
+            store();
+        }
+
+        private void recordPosition() {
+            checkpoint.inputOffset = voucherEnd;
+            checkpoint.vouchers = vouchersDone;
+            checkpoint.dataRows = dataRowIdx - 1;
+            checkpoint.rejectedRows = rejRowIdx - 1;
+        }
+
+        private void syncText() throws IOException {
+            checkpoint.outputBytes = csvWriter != null ? csvWriter.sync() : jsonWriter.sync();
+            checkpoint.rejectBytes = rejectLog.sync();
+            checkpoint.rejectsDropped = rejectLog.droppedCount();
+            checkpoint.rejectsLogged = rejectLog.rejectedCount() - checkpoint.rejectsDropped;
+            checkpoint.reasonCounts = new LinkedHashMap<>(rejectLog.reasonCounts());
+        }
+
+        private void store() throws IOException {
+            inputDigest.fill(checkpoint);
+            checkpoint.save();
         }
-        
-        return null; // Row is valid
     }
 
-    private void parseXmlToRows(Path xmlPath, Set<String> allFields, List<Map<String, String>> allRows) throws Exception {
-        XMLInputFactory factory = XMLInputFactory.newFactory();
-        try (InputStream fis = Files.newInputStream(xmlPath)) {
-            XMLEventReader reader = factory.createXMLEventReader(fis);
+    // Everything besides the input that changes the output, for matching checkpoints
+    private String describeOptions(ValidationRules rules) {
+        String options = format + "|gzip=" + isCompressed() + "|" + rules.describe();
+        if (format == OutputFormat.XLSX) {
+            options += "|" + rollover + "|" + rowsPerPart + "|direct=" + (directXlsx || sharedStrings)
+                    + "|shared=" + sharedStrings;
+        }
+        return options;
+    }
 
-            Map<String, String> currentParent = new HashMap<>();
-            List<Map<String, String>> currentTransactions = new ArrayList<>();
-            boolean inVoucher = false;
-            boolean inTransactions = false;
-            boolean inTransaction = false;
-            Map<String, String> currentTransaction = new HashMap<>();
+    // The output file, or for xlsx the first parts workbooks
+    private List<Path> outputsUpTo(int parts) {
+        if (format != OutputFormat.XLSX) return Collections.singletonList(getOutputPath());
+        List<Path> paths = new ArrayList<>(parts);
+        for (int n = 1; n <= parts; n++) paths.add(WorkbookSplitter.partPath(outXlsxPath, n));
+        return paths;
+    }
 
-            while (reader.hasNext()) {
-                if (isCanceled) throw new InterruptedException("Cancelled");
-                XMLEvent ev = reader.nextEvent();
+    // Whether the input up to the checkpoint and the output it refers to are still there
+    private boolean canResume(ConversionCheckpoint cp) throws IOException {
+        if (cp.headers.isEmpty() || Files.size(xmlPath) < cp.inputOffset) return false;
+        if (format == OutputFormat.XLSX) {
+            for (int n = 1; n <= cp.completedParts; n++) {
+                if (!Files.isRegularFile(WorkbookSplitter.partPath(outXlsxPath, n))) return false;
+            }
+        } else {
+            Path rejects = RejectLog.pathFor(outXlsxPath);
+            if (!Files.isRegularFile(getOutputPath()) || Files.size(getOutputPath()) < cp.outputBytes
+                    || (cp.rejectBytes > 0 && (!Files.isRegularFile(rejects) || Files.size(rejects) < cp.rejectBytes))) {
+                return false;
+            }
+        }
+        // Last, so the digests only continue from a checkpoint that is used
+        return inputDigest.matches(cp);
+    }
 
-                if (ev.isStartElement()) {
-                    StartElement se = ev.asStartElement();
-                    String name = se.getName().getLocalPart();
+    /**
+     * Streams the GL_VOUCHER/TRANSACTION structure of the file.
+     * Field names are added to allFields when it is non-null. When handler is null only the
+     * structure is scanned (element text is skipped, not collected), which makes this the
+     * cheap header pass; otherwise every transaction of a completed voucher is handed to the
+     * handler as a row laid out by columns. Only one voucher is held in memory at a time.
+     *
+     * @return number of transactions in completed vouchers
+     */
+    private long parseXml(Path xmlPath, Set<String> allFields, ColumnIndex columns, RowHandler handler) throws Exception {
+        try (InputStream fis = new BufferedInputStream(meter.count(Files.newInputStream(xmlPath)), 64 * 1024)) {
+            XMLStreamReader reader = newStreamReader(fis, null);
+            try {
+                return parseVouchers(new StaxCursor(reader), allFields, columns, handler);
+            } finally {
+                reader.close();
+            }
+        }
+    }
 
-                    if ("GL_VOUCHER".equalsIgnoreCase(name)) {
-                        inVoucher = true;
-                        currentParent.clear();
-                        currentTransactions.clear();
-                    } else if (inVoucher && "TRANSACTIONS".equalsIgnoreCase(name)) {
-                        inTransactions = true;
-                    } else if (inTransactions && "TRANSACTION".equalsIgnoreCase(name)) {
-                        inTransaction = true;
-                        currentTransaction = new HashMap<>();
-                    } else if (inTransaction) {
-                        String text = readElementText(reader, se);
-                        currentTransaction.put(name, text);
-                        allFields.add(name);
-                    } else if (inVoucher && !inTransactions) {
-                        String text = readElementText(reader, se);
-                        currentParent.put(name, text);
-                        allFields.add(name);
+    /**
+     * The GL_VOUCHER &gt; TRANSACTIONS &gt; TRANSACTION state machine behind parseXml, run on
+     * a whole document or on a run of voucher fragments.
+     */
+    private long parseVouchers(ElementCursor cursor, Set<String> allFields, ColumnIndex columns,
+                               RowHandler handler) throws Exception {
+        long rowCount = 0;
+        int width = handler != null ? columns.size() : 0;
+        // Voucher fields are shared by every transaction row of the voucher; the array
+        // is only copied if a voucher field changes after a row already references it.
+        String[] currentParent = new String[width];
+        boolean parentShared = false;
+        List<TransactionRow> currentTransactions = new ArrayList<>();
+        int currentTransactionCount = 0;
+        boolean inVoucher = false;
+        boolean inTransactions = false;
+        boolean inTransaction = false;
+        String[] currentTransaction = null;
+        long voucherNumber = 0;
+
+        int event;
+        while ((event = cursor.next()) != XMLStreamConstants.END_DOCUMENT) {
+            if (isCanceled) throw new InterruptedException("Cancelled");
+
+            // Local names come straight from the parser's symbol table: no QName or
+            // event objects are created for the comparisons below.
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = cursor.localName();
+
+                if ("GL_VOUCHER".equalsIgnoreCase(name)) {
+                    inVoucher = true;
+                    voucherNumber++;
+                    currentParent = new String[width];
+                    parentShared = false;
+                    currentTransactions.clear();
+                    currentTransactionCount = 0;
+                } else if (inVoucher && "TRANSACTIONS".equalsIgnoreCase(name)) {
+                    inTransactions = true;
+                } else if (inTransactions && "TRANSACTION".equalsIgnoreCase(name)) {
+                    inTransaction = true;
+                    if (handler != null) currentTransaction = new String[width];
+                } else if (inTransaction) {
+                    if (allFields != null) allFields.add(name);
+                    if (handler != null) {
+                        int col = columns.indexOf(name);
+                        String text = cursor.readElementText();
+                        if (col >= 0) currentTransaction[col] = text;
+                    } else {
+                        cursor.skipElement();
                     }
-                } else if (ev.isEndElement()) {
-                    EndElement ee = ev.asEndElement();
-                    String endName = ee.getName().getLocalPart();
-
-                    if ("TRANSACTION".equalsIgnoreCase(endName)) {
-                        Map<String, String> completeRow = new HashMap<>(currentParent);
-                        completeRow.putAll(currentTransaction);
-                        currentTransactions.add(completeRow);
-                        inTransaction = false;
-                    } else if ("TRANSACTIONS".equalsIgnoreCase(endName)) {
-                        inTransactions = false;
-                    } else if ("GL_VOUCHER".equalsIgnoreCase(endName)) {
-                        allRows.addAll(currentTransactions);
-                        inVoucher = false;
+                } else if (inVoucher && !inTransactions) {
+                    if (allFields != null) allFields.add(name);
+                    if (handler != null) {
+                        int col = columns.indexOf(name);
+                        String text = cursor.readElementText();
+                        if (col >= 0) {
+                            if (parentShared) {
+                                currentParent = currentParent.clone();
+                                parentShared = false;
+                            }
+                            currentParent[col] = text;
+                        }
+                    } else {
+                        cursor.skipElement();
                     }
                 }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String endName = cursor.localName();
+
+                if ("TRANSACTION".equalsIgnoreCase(endName)) {
+                    if (handler != null) {
+                        currentTransactions.add(new TransactionRow(currentParent, currentTransaction, currentTransactions.size() + 1));
+                        parentShared = true;
+                    }
+                    currentTransactionCount++;
+                    inTransaction = false;
+                } else if ("TRANSACTIONS".equalsIgnoreCase(endName)) {
+                    inTransactions = false;
+                } else if ("GL_VOUCHER".equalsIgnoreCase(endName)) {
+                    if (handler != null) {
+                        for (TransactionRow row : currentTransactions) {
+                            handler.onRow(row, voucherNumber);
+                        }
+                        currentTransactions.clear();
+                    }
+                    rowCount += currentTransactionCount;
+                    currentTransactionCount = 0;
+                    inVoucher = false;
+                }
             }
-            reader.close();
         }
+        return rowCount;
     }
 
-    private void createHeaderRow(Sheet sheet, List<String> headers, Workbook wb) {
-        Row headerRow = sheet.createRow(0);
-        CellStyle headerStyle = wb.createCellStyle();
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        Font headerFont = wb.createFont();
-        headerFont.setBold(true);
-        headerFont.setColor(IndexedColors.BLACK.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setBorderTop(BorderStyle.THIN);
-        headerStyle.setBorderBottom(BorderStyle.THIN);
-        headerStyle.setBorderLeft(BorderStyle.THIN);
-        headerStyle.setBorderRight(BorderStyle.THIN);
+    /**
+     * Chunked counterpart of parseXml, used for parallel parsing and the fast scanner.
+     * Voucher ranges found by VoucherSplitter are grouped into chunks of roughly
+     * PARALLEL_CHUNK_BYTES; each chunk is mapped once and its vouchers are parsed either with
+     * StAX or with VoucherScanner, on the ForkJoin common pool when parallel is set and inline
+     * otherwise. A bounded window of chunks is in flight and the results are consumed strictly
+     * in submission order, so fields are discovered and rows are handed to the handler exactly
+     * as the sequential parser would.
+     */
+    private long parseXmlChunked(Path xmlPath, Set<String> allFields, ColumnIndex columns, RowHandler handler,
+                                 boolean parallel, boolean fastScan, long startOffset, long vouchersBefore,
+                                 List<String> parents) throws Exception {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+        ArrayDeque<ForkJoinTask<VoucherChunk>> inFlight = new ArrayDeque<>();
+        long rowCount = 0;
+        long vouchersDone = vouchersBefore;
 
-        for (int i = 0; i < headers.size(); i++) {
-            Cell c = headerRow.createCell(i);
-            c.setCellValue(headers.get(i));
-            c.setCellStyle(headerStyle);
-            sheet.setColumnWidth(i, 20 * 256);
+        try (FileChannel channel = FileChannel.open(xmlPath, StandardOpenOption.READ);
+             VoucherSplitter splitter = new VoucherSplitter(channel, startOffset, parents)) {
+            long[] range = new long[2];
+            VoucherChunk chunk = null;
+            boolean more = true;
+            while (more) {
+                if (isCanceled) throw new InterruptedException("Cancelled");
+                more = splitter.next(range);
+                if (more) {
+                    if (chunk == null) chunk = new VoucherChunk(range[0]);
+                    chunk.add(range[0], range[1]);
+                }
+                if (chunk != null && (!more || chunk.byteLength() >= PARALLEL_CHUNK_BYTES)) {
+                    final VoucherChunk task = chunk;
+                    final String encoding = splitter.encoding();
+                    final MappedByteBuffer buffer = splitter.map(task.start, task.end);
+                    Callable<VoucherChunk> job = () -> task.parse(buffer, encoding, fastScan, allFields != null, columns, handler != null);
+                    if (parallel) {
+                        inFlight.addLast(pool.submit(job));
+                    } else {
+                        ForkJoinTask<VoucherChunk> inline = ForkJoinTask.adapt(job);
+                        inline.invoke();
+                        inFlight.addLast(inline);
+                    }
+                    chunk = null;
+                }
+                while (inFlight.size() >= maxInFlight || (!more && !inFlight.isEmpty())) {
+                    VoucherChunk done = drainChunk(inFlight.removeFirst(), allFields, handler, vouchersDone);
+                    rowCount += done.rowCount;
+                    vouchersDone += done.voucherCount;
+                }
+            }
+            if (startOffset == 0) voucherParents = splitter.voucherParents();
+        } finally {
+            for (ForkJoinTask<VoucherChunk> t : inFlight) t.cancel(true);
         }
+        return rowCount;
     }
 
-    private void createRejectedHeader(Sheet rejectedSheet) {
-        Row rejHeader = rejectedSheet.createRow(0);
-        rejHeader.createCell(0).setCellValue("SourceFile");
-        rejHeader.createCell(1).setCellValue("RowContext");
-        rejHeader.createCell(2).setCellValue("Reason");
+    // Hands a finished chunk's results on; its voucher numbers are relative to the vouchers before it
+    private VoucherChunk drainChunk(ForkJoinTask<VoucherChunk> task, Set<String> allFields, RowHandler handler,
+                                    long vouchersBefore) throws Exception {
+        VoucherChunk done = task.get();
+        if (done.failure != null) throw done.failure;
+        if (allFields != null) allFields.addAll(done.fields);
+        if (handler != null) {
+            int r = 0;
+            for (int v = 1; v <= done.voucherCount; v++) {
+                for (; r < done.rows.size() && done.rowVouchers[r] <= v; r++) {
+                    handler.onRow(done.rows.get(r), vouchersBefore + done.rowVouchers[r]);
+                }
+                handler.onVouchersDone(done.voucherEnd(v), vouchersBefore + v);
+                meter.position(done.voucherEnd(v));
+            }
+        }
+        meter.position(done.end);
+        return done;
     }
 
-    private BufferedWriter prepareCsvWriter(Path csvOutPath, Path outXlsxPath, List<String> headers) throws IOException {
-        if (csvOutPath == null) {
-            Path parent = outXlsxPath.getParent();
-            csvOutPath = parent.resolve(outXlsxPath.getFileName().toString().replaceAll("\\.xlsx$", "") + ".csv");
+    /**
+     * A run of consecutive vouchers parsed by one pool task. Offsets are absolute file
+     * positions; the results (or the exception that stopped the parse) are filled in by parse().
+     */
+    private final class VoucherChunk {
+        final long start;
+        long end;
+        private long[] voucherRanges = new long[16];
+        int voucherCount;
+
+        final Set<String> fields = new LinkedHashSet<>();
+        final List<TransactionRow> rows = new ArrayList<>();
+        // Chunk-relative voucher number of each row
+        int[] rowVouchers = new int[64];
+        long rowCount;
+        Exception failure;
+
+        VoucherChunk(long start) {
+            this.start = start;
+            this.end = start;
         }
-        BufferedWriter csvWriter = Files.newBufferedWriter(csvOutPath, java.nio.charset.StandardCharsets.UTF_8);
-        csvWriter.write(String.join(",", escapeCsvList(headers)));
-        csvWriter.newLine();
-        return csvWriter;
-    }
 
-    private void writeDataRow(Sheet sheet, Map<String, String> rowData, List<String> headers, int rowIdx, Workbook wb, BufferedWriter csvWriter) throws IOException {
-        List<String> csvCells = new ArrayList<>(headers.size());
-        
-        // If we're only doing CSV export, skip Excel row creation
-        if (csvWriter != null && (csvOutPath != null)) {
-            // CSV-only mode: just prepare CSV data
-            for (int i = 0; i < headers.size(); i++) {
-                String value = rowData.getOrDefault(headers.get(i), "");
-                csvCells.add(safeCsvCell(value));
+        void add(long voucherStart, long voucherEnd) {
+            if (voucherCount * 2 == voucherRanges.length) {
+                voucherRanges = Arrays.copyOf(voucherRanges, voucherRanges.length * 2);
             }
-        } else {
-            // Excel mode (with optional CSV): create Excel row
-            Row row = sheet.createRow(rowIdx);
-            boolean isBlue = (rowIdx % 2 == 0);
+            voucherRanges[voucherCount * 2] = voucherStart;
+            voucherRanges[voucherCount * 2 + 1] = voucherEnd;
+            voucherCount++;
+            end = voucherEnd;
+        }
+
+        long byteLength() {
+            return end - start;
+        }
 
-            CellStyle dataStyle = wb.createCellStyle();
-            dataStyle.cloneStyleFrom(getStyle(wb, isBlue, false));
-            dataStyle.setBorderTop(BorderStyle.THIN);
-            dataStyle.setBorderBottom(BorderStyle.THIN);
-            dataStyle.setBorderLeft(BorderStyle.THIN);
-            dataStyle.setBorderRight(BorderStyle.THIN);
+        // Input offset just behind chunk-relative voucher v (1-based)
+        long voucherEnd(int v) {
+            return voucherRanges[v * 2 - 1];
+        }
 
-            for (int i = 0; i < headers.size(); i++) {
-                String value = rowData.getOrDefault(headers.get(i), "");
-                Cell cell = row.createCell(i);
-                writeCellValue(cell, value, isBlue, wb);
-                cell.setCellStyle(dataStyle);
-                csvCells.add(safeCsvCell(value));
+        private void collect(TransactionRow row, long voucher) {
+            if (rows.size() == rowVouchers.length) {
+                rowVouchers = Arrays.copyOf(rowVouchers, rowVouchers.length * 2);
             }
+            rowVouchers[rows.size()] = (int) voucher;
+            rows.add(row);
         }
 
-        if (csvWriter != null) {
-            csvWriter.write(String.join(",", csvCells));
-            csvWriter.newLine();
+        VoucherChunk parse(MappedByteBuffer buffer, String encoding, boolean fastScan, boolean collectFields,
+                           ColumnIndex columns, boolean collectRows) {
+            RowHandler sink = collectRows ? this::collect : null;
+            try {
+                if (fastScan) {
+                    if (!"UTF-8".equalsIgnoreCase(encoding) && !"UTF8".equalsIgnoreCase(encoding)
+                            && !"US-ASCII".equalsIgnoreCase(encoding) && !"ASCII".equalsIgnoreCase(encoding)) {
+                        throw new VoucherSplitter.UnsupportedLayoutException("Fast scan requires UTF-8 input, found " + encoding);
+                    }
+                    ElementCursor scanner = new VoucherScanner(buffer, start, voucherRanges, voucherCount);
+                    rowCount = parseVouchers(scanner, collectFields ? fields : null, columns, sink);
+                } else {
+                    // One reader per chunk: the vouchers are fed back to back inside a synthetic
+                    // wrapper element, skipping whatever lies between them in the file.
+                    InputStream in = new VoucherSliceInputStream(buffer, start, voucherRanges, voucherCount);
+                    XMLStreamReader reader = newStreamReader(in, encoding);
+                    try {
+                        rowCount = parseVouchers(new StaxCursor(reader), collectFields ? fields : null, columns, sink);
+                    } finally {
+                        reader.close();
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+            return this;
         }
     }
 
-    private void writeRejectedRow(Sheet rejectedSheet, Path xmlPath, Map<String, String> rowData, String reason, int rejRowIdx) {
-        Row r = rejectedSheet.createRow(rejRowIdx);
-        r.createCell(0).setCellValue(xmlPath.getFileName().toString());
-        r.createCell(1).setCellValue(rowData.toString());
-        r.createCell(2).setCellValue(reason);
+    private static XMLStreamReader newStreamReader(InputStream in, String encoding) throws XMLStreamException {
+        synchronized (XML_INPUT_FACTORY) {
+            return encoding != null
+                    ? XML_INPUT_FACTORY.createXMLStreamReader(in, encoding)
+                    : XML_INPUT_FACTORY.createXMLStreamReader(in);
+        }
     }
 
-    private void autosizeColumns(Sheet sheet, int columnCount) {
-        int autosizeLimit = Math.min(columnCount, 15);
-        for (int i = 0; i < autosizeLimit; i++) {
-            sheet.autoSizeColumn(i);
+    /**
+     * Streams the given voucher ranges of a mapped chunk as one well-formed document:
+     * &lt;chunk&gt; voucher voucher ... &lt;/chunk&gt;.
+     */
+    private static final class VoucherSliceInputStream extends InputStream {
+        private static final byte[] OPEN = "<chunk>".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        private static final byte[] CLOSE = "</chunk>".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+        private final ByteBuffer buffer;
+        private final long base;
+        private final long[] ranges;
+        private final int count;
+        private ByteBuffer current;
+        private int next = -1; // -1: wrapper open tag, count: wrapper close tag
+
+        VoucherSliceInputStream(ByteBuffer buffer, long base, long[] ranges, int count) {
+            this.buffer = buffer;
+            this.base = base;
+            this.ranges = ranges;
+            this.count = count;
         }
-    }
 
-    // Writes workbook to a temporary file and moves atomically into place.
-    // Returns the path of the temp file used (may be deleted/moved by move call).
-    private Path writeWorkbookAtomic(Workbook wb, Path outXlsxPath) throws IOException {
-        Path parent = outXlsxPath.getParent();
-        if (parent == null) parent = Paths.get(".");
-        Path tmp = parent.resolve(outXlsxPath.getFileName().toString() + ".tmp");
-        try (OutputStream os = Files.newOutputStream(tmp)) {
-            wb.write(os);
-            os.flush();
+        private boolean advance() {
+            while (current == null || !current.hasRemaining()) {
+                if (next > count) return false;
+                if (next == -1) {
+                    current = ByteBuffer.wrap(OPEN);
+                } else if (next == count) {
+                    current = ByteBuffer.wrap(CLOSE);
+                } else {
+                    current = buffer.duplicate();
+                    current.limit((int) (ranges[next * 2 + 1] - base));
+                    current.position((int) (ranges[next * 2] - base));
+                }
+                next++;
+            }
+            return true;
         }
-        // Move atomically (will fail if filesystem doesn't support ATOMIC_MOVE)
-        Files.move(tmp, outXlsxPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-        return tmp;
-    }
 
-    private void writeCellValue(Cell cell, String value, boolean isBlue, Workbook wb) {
-        if (value == null) value = "";
-        Date d = tryParseDate(value);
-        if (d != null) {
-            cell.setCellValue(d);
-            cell.setCellStyle(getStyle(wb, isBlue, true));
-            return;
+        @Override
+        public int read() {
+            return advance() ? current.get() & 0xFF : -1;
         }
-        Double n = tryParseNumber(value);
-        if (n != null) {
-            cell.setCellValue(n);
-            cell.setCellStyle(getStyle(wb, isBlue, false));
-            return;
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!advance()) return -1;
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
         }
-        cell.setCellValue(value);
-        cell.setCellStyle(getStyle(wb, isBlue, false));
     }
 
-    private static String safeCsvCell(String s) {
-        if (s == null) return "";
-        String out = s.replace("\"", "\"\"");
-        if (out.contains(",") || out.contains("\"") || out.contains("\n")) {
-            return "\"" + out + "\"";
+    private void writeCsvRow(CsvFileWriter csvWriter, TransactionRow rowData, int columnCount) throws IOException {
+        for (int i = 0; i < columnCount; i++) {
+            csvWriter.cell(rowData.get(i));
         }
-        return out;
+        csvWriter.endRow();
     }
 
-    private static List<String> escapeCsvList(List<String> in) {
-        List<String> out = new ArrayList<>();
-        for (String s : in) out.add(safeCsvCell(s));
-        return out;
+    private void writeJsonRow(JsonLinesWriter jsonWriter, TransactionRow rowData, ColumnTypes types,
+                              ValidationRules.Plan validation, int columnCount) throws IOException {
+        for (int i = 0; i < columnCount; i++) {
+            String value = rowData.get(i);
+            if (value == null) {
+                jsonWriter.nullValue(i);
+                continue;
+            }
+            ColumnTypes.Type written = ColumnTypes.classify(value, types.get(i), dateParser, numberParser);
+            switch (written) {
+                case DATE:
+                    jsonWriter.date(i, dateParser.year(), dateParser.month(), dateParser.day());
+                    break;
+                case NUMBER:
+                    // "1.234,56" is 1234.56; codes and values like "120.70" stay strings
+                    if (!validation.isIdentifier(i) && JsonLinesWriter.isUnambiguousNumber(value)) {
+                        jsonWriter.number(i, numberParser.value());
+                    } else {
+                        jsonWriter.string(i, value);
+                        written = ColumnTypes.Type.TEXT;
+                    }
+                    break;
+                default:
+                    jsonWriter.string(i, value);
+            }
+            if (!value.isEmpty()) types.record(i, written);
+        }
+        jsonWriter.endRow();
     }
 }
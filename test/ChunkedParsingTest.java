@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The chunked parser (parallel parsing, fast scan, checkpoints) splits the input at GL_VOUCHER
+ * boundaries; it must still accept and reject exactly the documents the sequential parser
+ * does, and write the same output for the ones it accepts.
+ */
+class ChunkedParsingTest {
+
+    private static final String VOUCHERS =
+            "<GL_VOUCHER><VNO>1</VNO><DATE>01.02.2024</DATE><TRANSACTIONS>\n"
+            + "<TRANSACTION><ACCOUNT>100</ACCOUNT><AMOUNT>1,50</AMOUNT></TRANSACTION>\n"
+            + "</TRANSACTIONS></GL_VOUCHER>\n"
+            + "<GL_VOUCHER><VNO>2</VNO><DATE>02.02.2024</DATE><TRANSACTIONS>\n"
+            + "<TRANSACTION><ACCOUNT>320</ACCOUNT><AMOUNT>2,50</AMOUNT></TRANSACTION>\n"
+            + "</TRANSACTIONS></GL_VOUCHER>\n";
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+    private enum Mode { SEQUENTIAL, PARALLEL, FAST_SCAN, PARALLEL_FAST_SCAN, RESUMABLE }
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void wellFormedInput() throws Exception {
+        assertSameOutcome(DECLARATION + "<ROOT>\n" + VOUCHERS + "</ROOT>\n<!-- end -->\n");
+        assertSameOutcome(DECLARATION + "<ROOT><HEAD a=\"x &amp; y\">text</HEAD>\n<LIST>" + VOUCHERS + "</LIST></ROOT>");
+    }
+
+    @Test
+    void truncatedInput() throws Exception {
+        // Complete vouchers, but the root element is never closed
+        assertSameOutcome(DECLARATION + "<ROOT>\n" + VOUCHERS);
+        assertSameOutcome(DECLARATION + "<ROOT><LIST>\n" + VOUCHERS + "</LIST>\n");
+    }
+
+    @Test
+    void malformedMarkupAroundVouchers() throws Exception {
+        assertSameOutcome(DECLARATION + "<ROOT>\n" + VOUCHERS + "</ROOT>\ntrailing text\n");
+        assertSameOutcome(DECLARATION + "<ROOT>\n" + VOUCHERS + "</ROOT>\n<ROOT/>\n");
+        assertSameOutcome(DECLARATION + "<ROOT><LIST>\n" + VOUCHERS + "</ROOT></LIST>\n");
+        assertSameOutcome(DECLARATION + "<ROOT>\n" + VOUCHERS + "</GL_VOUCHER></ROOT>\n");
+        assertSameOutcome(DECLARATION + "<ROOT>&undefined;\n" + VOUCHERS + "</ROOT>\n");
+    }
+
+    private void assertSameOutcome(String xml) throws Exception {
+        Path input = dir.resolve("in.xml");
+        Files.write(input, xml.getBytes(StandardCharsets.UTF_8));
+        Outcome expected = convert(input, Mode.SEQUENTIAL);
+        for (Mode mode : Arrays.asList(Mode.PARALLEL, Mode.FAST_SCAN, Mode.PARALLEL_FAST_SCAN, Mode.RESUMABLE)) {
+            Outcome actual = convert(input, mode);
+            assertEquals(expected.failure, actual.failure, mode + " on\n" + xml);
+            assertArrayEquals(expected.csv, actual.csv, mode + " on\n" + xml);
+        }
+    }
+
+    private Outcome convert(Path input, Mode mode) throws Exception {
+        Path out = dir.resolve(mode.name().toLowerCase() + ".csv");
+        Files.deleteIfExists(out);
+        XmlParser parser = new XmlParser(input, out, XmlParser.OutputFormat.CSV);
+        parser.setParallelParsing(mode == Mode.PARALLEL || mode == Mode.PARALLEL_FAST_SCAN);
+        parser.setFastScan(mode == Mode.FAST_SCAN || mode == Mode.PARALLEL_FAST_SCAN);
+        parser.setResumable(mode == Mode.RESUMABLE);
+        Outcome outcome = new Outcome();
+        try {
+            parser.processFile();
+        } catch (Exception e) {
+            outcome.failure = e.getClass().getName();
+        }
+        outcome.csv = outcome.failure == null && Files.exists(out) ? Files.readAllBytes(out) : new byte[0];
+        return outcome;
+    }
+
+    private static final class Outcome {
+        String failure;
+        byte[] csv;
+    }
+}
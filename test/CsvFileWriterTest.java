@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Quoting and encoding of cells, including values that straddle a buffer flush and values
+ * longer than the buffer.
+ */
+class CsvFileWriterTest {
+
+    private static final String NL = System.lineSeparator();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void quotesOnlyWhenNeeded() throws Exception {
+        assertEquals("plain,\"a,b\",\"say \"\"hi\"\"\",\"two" + "\n" + "lines\",çğü €,\"ş,\uD83D\uDE00\"\"\"," + NL,
+                write("plain", "a,b", "say \"hi\"", "two\nlines", "çğü €", "ş,\uD83D\uDE00\"", ""));
+    }
+
+    @Test
+    void longValuesMatchShortOnes() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 3_000_000; i++) sb.append("ğ").append(i).append(i % 1000 == 0 ? "," : "");
+        String value = sb.toString();
+        String expected = "\"" + value + "\"" + NL;
+        // Enough short rows first that the long one starts near the end of the buffer
+        StringBuilder rows = new StringBuilder();
+        String[] cells = new String[200_001];
+        Arrays.fill(cells, 0, 200_000, "x,y");
+        cells[200_000] = value;
+        Path out = dir.resolve("out.csv");
+        try (CsvFileWriter w = new CsvFileWriter(out, false)) {
+            for (int i = 0; i < 200_000; i++) {
+                w.writeRow(Arrays.asList(cells[i], "é"));
+                rows.append("\"x,y\",é").append(NL);
+            }
+            w.writeRow(Arrays.asList(value));
+            w.writeRow(Arrays.asList(value.substring(0, 1_000_000)));
+        }
+        rows.append(expected).append("\"").append(value, 0, 1_000_000).append("\"").append(NL);
+        assertEquals(rows.toString(), new String(Files.readAllBytes(out), StandardCharsets.UTF_8));
+    }
+
+    private String write(String... cells) throws Exception {
+        Path out = dir.resolve("cells.csv");
+        try (CsvFileWriter w = new CsvFileWriter(out, false)) {
+            w.writeRow(Arrays.asList(cells));
+        }
+        return new String(Files.readAllBytes(out), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.Test;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Differential test of FastNumberParser against the NumberFormat(tr) / Double.parseDouble
+ * code it replaced: both must accept the same values and read them as the same double.
+ */
+class FastNumberParserTest {
+
+    private static final Locale TURKISH_LOCALE = new Locale("tr", "TR");
+
+    // The former XmlParser.tryParseNumber, unchanged
+    private static Double legacyParse(String raw) {
+        if (raw == null || raw.trim().isEmpty()) return null;
+        String trimmed = raw.trim().replace("\u00A0", "").replaceAll("\\s+", "");
+        NumberFormat nf = NumberFormat.getInstance(TURKISH_LOCALE);
+        try {
+            Number n = nf.parse(trimmed);
+            return n.doubleValue();
+        } catch (Exception ignored) { }
+        try {
+            String normalized = trimmed.replace(",", ".");
+            return Double.parseDouble(normalized);
+        } catch (Exception ignored) { }
+        return null;
+    }
+
+    private final FastNumberParser parser = new FastNumberParser();
+
+    private void assertSame(String raw) {
+        Double expected = legacyParse(raw);
+        boolean parsed = parser.parse(raw);
+        String shown = "\"" + raw.replace("\u00A0", "<NBSP>") + "\"";
+        assertEquals(expected != null, parsed, "accepted " + shown);
+        if (parsed) {
+            // Bit-for-bit, so -0.0 and 0.0 are told apart
+            assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(parser.value()),
+                    "value of " + shown + ": expected " + expected + ", got " + parser.value());
+        }
+    }
+
+    @Test
+    void turkishGroupingAndDecimalComma() {
+        for (String s : new String[] {"1.234,56", "1.234.567,8", "0,50", "12,5", "1.234", "1.2.3,4", ",5", "5,",
+                "1,234,5", "000,00", "0", "00012"}) {
+            assertSame(s);
+        }
+    }
+
+    @Test
+    void blankAndNbspGrouping() {
+        for (String s : new String[] {"1\u00A0234,56", "1 234 567", " 42 ", "\u00A0\u00A0", "1\t2", "\u00A0-5",
+                "- 5", "1\u00A0234\u00A0567,8", "   "}) {
+            assertSame(s);
+        }
+    }
+
+    @Test
+    void dotAsDecimalPoint() {
+        // '.' is the Turkish grouping separator, so this reads as 123456
+        for (String s : new String[] {"1234.56", "120.70", "0.5", ".5", "100.0"}) {
+            assertSame(s);
+        }
+    }
+
+    @Test
+    void signs() {
+        for (String s : new String[] {"-1", "-0", "-0,0", "+1", "+1,5", "--1", "-", "+", "1-", "-,5", "-.5"}) {
+            assertSame(s);
+        }
+    }
+
+    @Test
+    void exponentsAndSpecialValues() {
+        for (String s : new String[] {"1E3", "1,5E-3", "1e3", "2E", "1E+3", "1.5E400", "Infinity", "-Infinity", "NaN",
+                "E5", "12345678901234567890", "0,0000000000000000000000001", "9007199254740993"}) {
+            assertSame(s);
+        }
+    }
+
+    @Test
+    void junkSuffixesAndText() {
+        for (String s : new String[] {"12abc", "abc12", "12,5 TL", "₺12", "1,2,3", "12%", "1/2", "0x1F", "٣", "12\u0000",
+                "", "TL"}) {
+            assertSame(s);
+        }
+    }
+
+    @Test
+    void randomInputs() {
+        Random random = new Random(20240516L);
+        String alphabet = "0123456789012345678901234567890123456789..,,  \u00A0-+eEaxTL₺\t";
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < 200_000; n++) {
+            sb.setLength(0);
+            int length = 1 + random.nextInt(14);
+            for (int i = 0; i < length; i++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            assertSame(sb.toString());
+        }
+    }
+
+    @Test
+    void randomFormattedAmounts() {
+        Random random = new Random(7L);
+        NumberFormat turkish = NumberFormat.getInstance(TURKISH_LOCALE);
+        turkish.setMaximumFractionDigits(4);
+        for (int n = 0; n < 100_000; n++) {
+            double amount = (random.nextDouble() - 0.3) * Math.pow(10, random.nextInt(16));
+            String formatted = turkish.format(amount);
+            assertSame(formatted);
+            assertSame(formatted.replace('.', '\u00A0'));
+            assertSame(formatted.replace(".", ""));
+            assertSame(Double.toString(amount));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Amounts in the Turkish format are JSON numbers; codes and values with a second reading
+ * keep their text.
+ */
+class JsonLinesWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void unambiguousNumbers() {
+        for (String value : new String[] {"0", "42", "-3,5", "1.234,56", "12.345.678,9", "1 234", "1\u00A0234,5", " 7 "}) {
+            assertTrue(JsonLinesWriter.isUnambiguousNumber(value), value);
+        }
+        for (String value : new String[] {"", "-", "1.234", "1.5", "120.70", "0012", "1e5", "12abc", "1,", ",5",
+                "1.23,4", "1.234 567,8", "1,2,3", "1234567890123456"}) {
+            assertFalse(JsonLinesWriter.isUnambiguousNumber(value), value);
+        }
+    }
+
+    @Test
+    void amountsAreNumbersAndCodesStrings() throws Exception {
+        Path input = dir.resolve("in.xml");
+        Files.write(input, ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<ROOT>\n"
+                + "<GL_VOUCHER><VNO>1</VNO><DATE>01.02.2024</DATE><TRANSACTIONS>\n"
+                + "<TRANSACTION><ACCOUNT>120.70</ACCOUNT><AMOUNT>1.234,56</AMOUNT></TRANSACTION>\n"
+                + "<TRANSACTION><ACCOUNT>320</ACCOUNT><AMOUNT>-3,5</AMOUNT></TRANSACTION>\n"
+                + "</TRANSACTIONS></GL_VOUCHER>\n</ROOT>\n").getBytes(StandardCharsets.UTF_8));
+        Path out = dir.resolve("out.jsonl");
+        new XmlParser(input, out, XmlParser.OutputFormat.JSONL).processFile();
+
+        String json = new String(Files.readAllBytes(out), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"AMOUNT\":1234.56"), json);
+        assertTrue(json.contains("\"AMOUNT\":-3.5"), json);
+        assertTrue(json.contains("\"ACCOUNT\":\"120.70\""), json);
+        assertTrue(json.contains("\"ACCOUNT\":\"320\""), json);
+    }
+}
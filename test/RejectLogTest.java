@@ -0,0 +1,55 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The reject sidecar describes the last conversion only: a clean run after one with rejects
+ * leaves no sidecar behind.
+ */
+class RejectLogTest {
+
+    private static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<ROOT>\n"
+            + "<GL_VOUCHER><VNO>1</VNO><DATE>01.02.2024</DATE><TRANSACTIONS>\n"
+            + "<TRANSACTION><ACCOUNT>100</ACCOUNT><AMOUNT>1,50</AMOUNT></TRANSACTION>\n";
+    private static final String REJECTED = "<TRANSACTION><ACCOUNT></ACCOUNT><AMOUNT>2,50</AMOUNT></TRANSACTION>\n";
+    private static final String TAIL = "</TRANSACTIONS></GL_VOUCHER>\n</ROOT>\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void cleanCsvRunRemovesStaleSidecar() throws Exception {
+        dirtyThenClean(XmlParser.OutputFormat.CSV);
+    }
+
+    @Test
+    void cleanJsonLinesRunRemovesStaleSidecar() throws Exception {
+        dirtyThenClean(XmlParser.OutputFormat.JSONL);
+    }
+
+    private void dirtyThenClean(XmlParser.OutputFormat format) throws Exception {
+        Path input = dir.resolve("ledger.xml");
+        Path out = dir.resolve("ledger_out." + format.extension());
+        Path sidecar = RejectLog.pathFor(out);
+
+        write(input, HEAD + REJECTED + TAIL);
+        new XmlParser(input, out, format).processFile();
+        assertTrue(Files.isRegularFile(sidecar), "dirty run writes " + sidecar);
+
+        write(input, HEAD + TAIL);
+        XmlParser parser = new XmlParser(input, out, format);
+        parser.processFile();
+        assertFalse(Files.exists(sidecar), "clean run leaves " + sidecar);
+        assertFalse(parser.getOutputPaths().contains(sidecar));
+    }
+
+    private static void write(Path file, String xml) throws Exception {
+        Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,155 @@
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the Rollover.WORKBOOKS export on both writers, SXSSF and DirectXlsxWriter, and checks
+ * that they split the rows the same way and hold the same cells. Needs the full POI set in lib/
+ * (poi-ooxml-schemas included), which SXSSF and the XSSF reader load.
+ */
+class WorkbookSplitterTest {
+
+    private static final int VOUCHERS = 400;
+    private static final int ROWS_PER_PART = 250;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sxssfAndDirectSplitsMatch() throws Exception {
+        Path input = dir.resolve("ledger.xml");
+        writeLedger(input);
+
+        List<Path> sxssf = convert(input, dir.resolve("sxssf.xlsx"), false);
+        List<Path> direct = convert(input, dir.resolve("direct.xlsx"), true);
+
+        // 3 rows per voucher, one of them rejected: 800 data rows in parts of 250
+        assertEquals(4, sxssf.size());
+        assertEquals(sxssf.size(), direct.size());
+        for (int i = 0; i < sxssf.size(); i++) {
+            List<List<String>> expected = cells(sxssf.get(i));
+            assertEquals(expected, cells(direct.get(i)), "part " + (i + 1));
+        }
+        assertEquals(VOUCHERS * 2, dataRows(sxssf));
+    }
+
+    @Test
+    void columnWidthsCoverEveryRow() throws Exception {
+        // Descriptions only grow long after the first 1000 rows
+        Path input = dir.resolve("ledger.xml");
+        writeLedger(input, 1500, 500);
+
+        List<Path> sxssf = convert(input, dir.resolve("sxssf.xlsx"), false, XmlParser.Rollover.SHEETS, 2000);
+        List<Path> direct = convert(input, dir.resolve("direct.xlsx"), true, XmlParser.Rollover.SHEETS, 2000);
+        assertEquals(cells(sxssf.get(0)), cells(direct.get(0)));
+    }
+
+    @Test
+    void shorterExportRemovesStaleParts() throws Exception {
+        Path input = dir.resolve("ledger.xml");
+        writeLedger(input);
+        Path out = dir.resolve("ledger_out.xlsx");
+
+        assertEquals(4, convert(input, out, true).size());
+        assertEquals(2, convert(input, out, true, XmlParser.Rollover.WORKBOOKS, 2 * ROWS_PER_PART).size());
+        assertParts(out, 2);
+
+        assertEquals(4, convert(input, out, true).size());
+        assertEquals(1, convert(input, out, true, XmlParser.Rollover.SHEETS, ROWS_PER_PART).size());
+        assertParts(out, 1);
+    }
+
+    private static void assertParts(Path out, int parts) {
+        for (int n = 1; n <= parts + 2; n++) {
+            Path part = WorkbookSplitter.partPath(out, n);
+            assertEquals(n <= parts, Files.exists(part), part.toString());
+        }
+    }
+
+    private static List<Path> convert(Path input, Path out, boolean direct) throws Exception {
+        return convert(input, out, direct, XmlParser.Rollover.WORKBOOKS, ROWS_PER_PART);
+    }
+
+    private static List<Path> convert(Path input, Path out, boolean direct, XmlParser.Rollover rollover,
+                                      int rowsPerPart) throws Exception {
+        XmlParser parser = new XmlParser(input, out, XmlParser.OutputFormat.XLSX);
+        parser.setRollover(rollover);
+        parser.setRowsPerPart(rowsPerPart);
+        parser.setDirectXlsx(direct);
+        parser.processFile();
+        return parser.getOutputPaths();
+    }
+
+    private static void writeLedger(Path file) throws Exception {
+        writeLedger(file, VOUCHERS, VOUCHERS);
+    }
+
+    // Vouchers from longFrom on get a description 30 characters longer
+    private static void writeLedger(Path file, int vouchers, int longFrom) throws Exception {
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<ROOT>\n");
+            for (int v = 0; v < vouchers; v++) {
+                w.write("<GL_VOUCHER><VNO>" + v + "</VNO><DATE>0" + (1 + v % 9) + ".03.2024</DATE>"
+                        + "<DESC>Voucher &amp; \"" + v + "\"" + (v >= longFrom ? " for the second half of the year" : "")
+                        + "</DESC><TRANSACTIONS>\n");
+                w.write("<TRANSACTION><ACCOUNT>100." + v % 7 + "</ACCOUNT><AMOUNT>1.234," + v % 100
+                        + "</AMOUNT></TRANSACTION>\n");
+                w.write("<TRANSACTION><ACCOUNT>320</ACCOUNT><AMOUNT>-" + v + ",5</AMOUNT></TRANSACTION>\n");
+                w.write("<TRANSACTION><ACCOUNT></ACCOUNT><AMOUNT>7</AMOUNT></TRANSACTION>\n");
+                w.write("</TRANSACTIONS></GL_VOUCHER>\n");
+            }
+            w.write("</ROOT>\n");
+        }
+    }
+
+    // Sheet name, column widths, then every row as "A1=value|B1=value..." with numbers as doubles
+    private static List<List<String>> cells(Path workbook) throws Exception {
+        List<List<String>> out = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(workbook); Workbook wb = new XSSFWorkbook(in)) {
+            for (Sheet sheet : wb) {
+                List<String> rows = new ArrayList<>();
+                rows.add(sheet.getSheetName());
+                StringBuilder widths = new StringBuilder("widths=");
+                for (int i = 0; i < sheet.getRow(0).getLastCellNum(); i++) widths.append(sheet.getColumnWidth(i)).append('|');
+                rows.add(widths.toString());
+                for (Row row : sheet) {
+                    StringBuilder sb = new StringBuilder();
+                    for (Cell cell : row) {
+                        sb.append(cell.getAddress()).append('=');
+                        sb.append(cell.getCellTypeEnum() == CellType.NUMERIC
+                                ? Double.toString(cell.getNumericCellValue()) : cell.getStringCellValue());
+                        sb.append('|');
+                    }
+                    rows.add(sb.toString());
+                }
+                out.add(rows);
+            }
+        }
+        return out;
+    }
+
+    private static int dataRows(List<Path> parts) throws Exception {
+        int rows = 0;
+        for (Path part : parts) {
+            try (InputStream in = Files.newInputStream(part); Workbook wb = new XSSFWorkbook(in)) {
+                rows += wb.getSheet("Data").getLastRowNum();
+            }
+        }
+        return rows;
+    }
+}